@@ -0,0 +1,53 @@
+package ftbsc.lll.mapper.benchmark;
+
+import ftbsc.lll.mapper.MapperProvider;
+import ftbsc.lll.mapper.impl.MultiMapper;
+import ftbsc.lll.mapper.utils.Mapper;
+import ftbsc.lll.mapper.utils.MapperComposer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of composing a chain of {@link Mapper}s, as done
+ * by {@link MultiMapper}. The chain goes forward, back and forward
+ * again through the same synthetic mappings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompositionBenchmark {
+	/**
+	 * The number of classes in each stage.
+	 */
+	@Param({"10000"})
+	public int classes;
+
+	/**
+	 * The stages of the chain.
+	 */
+	private List<Mapper> stages;
+
+	/**
+	 * Builds the stages.
+	 */
+	@Setup
+	public void setup() {
+		List<String> lines = new SyntheticMappings(this.classes, 12, 6, 42).tsrg();
+		Mapper mapper = MapperProvider.getMapper(lines).getMapper(lines, false);
+		this.stages = Arrays.asList(mapper, mapper.getInverted(), mapper);
+	}
+
+	/**
+	 * @return the composed {@link Mapper}
+	 */
+	@Benchmark
+	public Mapper compose() {
+		return MapperComposer.compose(this.stages);
+	}
+}
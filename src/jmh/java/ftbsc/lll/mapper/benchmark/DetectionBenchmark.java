@@ -0,0 +1,32 @@
+package ftbsc.lll.mapper.benchmark;
+
+import ftbsc.lll.mapper.IMappingFormat;
+import ftbsc.lll.mapper.MapperProvider;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long {@link MapperProvider} takes to pick the format of a file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DetectionBenchmark {
+	/**
+	 * The header of the file.
+	 */
+	@Param({"tsrg2 obf srg", "tiny\t2\t0\tofficial\tnamed", "CL: a net/minecraft/A", "lll multimapper"})
+	public String header;
+
+	/**
+	 * @return the detected {@link IMappingFormat}
+	 */
+	@Benchmark
+	public IMappingFormat detect() {
+		return MapperProvider.getMapper(this.header);
+	}
+}
@@ -0,0 +1,93 @@
+package ftbsc.lll.mapper.benchmark;
+
+import ftbsc.lll.mapper.IMappingFormat;
+import ftbsc.lll.mapper.MapperProvider;
+import ftbsc.lll.mapper.utils.Mapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of {@link Mapper#getInverted()}, both the first time,
+ * when the inverted mapper is built, and afterwards.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class InversionBenchmark {
+	/**
+	 * A {@link Mapper} which has already been inverted once.
+	 */
+	private Mapper inverted;
+
+	/**
+	 * Builds and inverts the {@link Mapper}.
+	 */
+	@Setup
+	public void setup() {
+		List<String> lines = new SyntheticMappings(10000, 12, 6, 42).tsrg();
+		this.inverted = MapperProvider.getMapper(lines).getMapper(lines, false);
+		this.inverted.getInverted();
+	}
+
+	/**
+	 * Holds a {@link Mapper} which has never been inverted, parsed again before
+	 * each invocation, outside of the measurement.
+	 */
+	@State(Scope.Thread)
+	public static class Fresh {
+		/**
+		 * The lines of the file.
+		 */
+		private List<String> lines;
+
+		/**
+		 * The {@link IMappingFormat} to parse with.
+		 */
+		private IMappingFormat mappingFormat;
+
+		/**
+		 * The freshly parsed {@link Mapper}.
+		 */
+		private Mapper mapper;
+
+		/**
+		 * Generates the file.
+		 */
+		@Setup(Level.Trial)
+		public void setupTrial() {
+			this.lines = new SyntheticMappings(10000, 12, 6, 42).tsrg();
+			this.mappingFormat = MapperProvider.getMapper(this.lines);
+		}
+
+		/**
+		 * Parses a new {@link Mapper}.
+		 */
+		@Setup(Level.Invocation)
+		public void setupInvocation() {
+			this.mapper = this.mappingFormat.getMapper(this.lines, false);
+		}
+	}
+
+	/**
+	 * @param fresh the state holding a {@link Mapper} which was never inverted
+	 * @return the inverted {@link Mapper}
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public Mapper invertFirst(Fresh fresh) {
+		return fresh.mapper.getInverted();
+	}
+
+	/**
+	 * @return the inverted {@link Mapper}
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public Mapper invertAgain() {
+		return this.inverted.getInverted();
+	}
+}
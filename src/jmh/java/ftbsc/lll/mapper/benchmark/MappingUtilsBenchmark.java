@@ -0,0 +1,110 @@
+package ftbsc.lll.mapper.benchmark;
+
+import ftbsc.lll.mapper.MapperProvider;
+import ftbsc.lll.mapper.utils.Mapper;
+import ftbsc.lll.mapper.utils.MappingUtils;
+import org.objectweb.asm.Type;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of mapping types and method descriptors, both ways.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MappingUtilsBenchmark {
+	/**
+	 * The number of descriptors to map in each invocation.
+	 */
+	private static final int BATCH = 1024;
+
+	/**
+	 * The {@link Mapper} to use.
+	 */
+	private Mapper mapper;
+
+	/**
+	 * Plain method descriptors.
+	 */
+	private final String[] descriptors = new String[BATCH];
+
+	/**
+	 * Mapped method descriptors.
+	 */
+	private final String[] descriptorsMapped = new String[BATCH];
+
+	/**
+	 * Plain types.
+	 */
+	private final Type[] types = new Type[BATCH];
+
+	/**
+	 * Mapped types.
+	 */
+	private final Type[] typesMapped = new Type[BATCH];
+
+	/**
+	 * Builds the {@link Mapper} and picks the descriptors to map.
+	 */
+	@Setup
+	public void setup() {
+		SyntheticMappings synthetic = new SyntheticMappings(5000, 12, 6, 42);
+		List<String> lines = synthetic.tsrg();
+		this.mapper = MapperProvider.getMapper(lines).getMapper(lines, false);
+		this.mapper.getInverted();
+		for(int i = 0; i < BATCH; i++) {
+			int owner = (i * 7919) % 5000;
+			this.descriptors[i] = synthetic.methodDescriptor(owner, i % 12, false);
+			this.descriptorsMapped[i] = synthetic.methodDescriptor(owner, i % 12, true);
+			this.types[i] = Type.getType(synthetic.fieldDescriptor(owner, i % 6, false));
+			this.typesMapped[i] = Type.getType(synthetic.fieldDescriptor(owner, i % 6, true));
+		}
+	}
+
+	/**
+	 * @param blackhole the {@link Blackhole} to consume results with
+	 */
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void mapType(Blackhole blackhole) {
+		for(Type type : this.types)
+			blackhole.consume(MappingUtils.mapType(type, this.mapper, false));
+	}
+
+	/**
+	 * @param blackhole the {@link Blackhole} to consume results with
+	 */
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void mapTypeReverse(Blackhole blackhole) {
+		for(Type type : this.typesMapped)
+			blackhole.consume(MappingUtils.mapType(type, this.mapper, true));
+	}
+
+	/**
+	 * @param blackhole the {@link Blackhole} to consume results with
+	 */
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void mapMethodDescriptor(Blackhole blackhole) {
+		for(String descriptor : this.descriptors)
+			blackhole.consume(MappingUtils.mapMethodDescriptor(descriptor, this.mapper, false));
+	}
+
+	/**
+	 * @param blackhole the {@link Blackhole} to consume results with
+	 */
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void mapMethodDescriptorReverse(Blackhole blackhole) {
+		for(String descriptor : this.descriptorsMapped)
+			blackhole.consume(MappingUtils.mapMethodDescriptor(descriptor, this.mapper, true));
+	}
+}
@@ -0,0 +1,68 @@
+package ftbsc.lll.mapper.benchmark;
+
+import ftbsc.lll.mapper.IMappingFormat;
+import ftbsc.lll.mapper.MapperProvider;
+import ftbsc.lll.mapper.utils.Mapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long each {@link IMappingFormat} takes to parse a synthetic mapping file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParsingBenchmark {
+	/**
+	 * The format of the file.
+	 */
+	@Param({"tsrg", "tiny", "srg"})
+	public String format;
+
+	/**
+	 * The number of classes in the file.
+	 */
+	@Param({"10000"})
+	public int classes;
+
+	/**
+	 * The lines of the file.
+	 */
+	private List<String> lines;
+
+	/**
+	 * The {@link IMappingFormat} to parse with.
+	 */
+	private IMappingFormat mappingFormat;
+
+	/**
+	 * Generates the file and picks its format.
+	 */
+	@Setup
+	public void setup() {
+		this.lines = new SyntheticMappings(this.classes, 12, 6, 42).lines(this.format);
+		this.mappingFormat = MapperProvider.getMapper(this.lines);
+	}
+
+	/**
+	 * @return the parsed {@link Mapper}
+	 */
+	@Benchmark
+	public Mapper parse() {
+		return this.mappingFormat.getMapper(this.lines, false);
+	}
+
+	/**
+	 * @return the parsed {@link Mapper}
+	 */
+	@Benchmark
+	public Mapper parseParallel() {
+		return this.mappingFormat.getMapper(this.lines, false, ForkJoinPool.commonPool());
+	}
+}
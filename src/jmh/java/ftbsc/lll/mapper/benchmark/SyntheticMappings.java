@@ -0,0 +1,217 @@
+package ftbsc.lll.mapper.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates deterministic synthetic mapping files, shaped like real
+ * Minecraft mappings: short obfuscated names, long mapped ones, and
+ * descriptors that mostly reference other mapped classes.
+ */
+public class SyntheticMappings {
+	/**
+	 * The number of classes to generate.
+	 */
+	private final int classes;
+
+	/**
+	 * The number of methods to generate for each class.
+	 */
+	private final int methods;
+
+	/**
+	 * The number of fields to generate for each class.
+	 */
+	private final int fields;
+
+	/**
+	 * The seed used for the random choices.
+	 */
+	private final long seed;
+
+	/**
+	 * The constructor.
+	 * @param classes the number of classes
+	 * @param methods the number of methods for each class
+	 * @param fields the number of fields for each class
+	 * @param seed the random seed
+	 */
+	public SyntheticMappings(int classes, int methods, int fields, long seed) {
+		this.classes = classes;
+		this.methods = methods;
+		this.fields = fields;
+		this.seed = seed;
+	}
+
+	/**
+	 * @param index the index of the class
+	 * @return the plain name of the class
+	 */
+	public String className(int index) {
+		return "a" + Integer.toString(index, 36);
+	}
+
+	/**
+	 * @param index the index of the class
+	 * @return the mapped name of the class
+	 */
+	public String classNameMapped(int index) {
+		return "net/minecraft/world/level/Synthetic" + index;
+	}
+
+	/**
+	 * @param index the index of the method
+	 * @return the plain name of the method
+	 */
+	public String methodName(int index) {
+		return "m" + index;
+	}
+
+	/**
+	 * @param owner the index of the owner class
+	 * @param index the index of the method
+	 * @return the mapped name of the method
+	 */
+	public String methodNameMapped(int owner, int index) {
+		return "m_" + owner + "_" + index + "_";
+	}
+
+	/**
+	 * @param index the index of the field
+	 * @return the plain name of the field
+	 */
+	public String fieldName(int index) {
+		return "f" + index;
+	}
+
+	/**
+	 * @param owner the index of the owner class
+	 * @param index the index of the field
+	 * @return the mapped name of the field
+	 */
+	public String fieldNameMapped(int owner, int index) {
+		return "f_" + owner + "_" + index + "_";
+	}
+
+	/**
+	 * Generates the plain descriptor of a method.
+	 * @param owner the index of the owner class
+	 * @param index the index of the method
+	 * @return the descriptor
+	 */
+	public String methodDescriptor(int owner, int index) {
+		return this.methodDescriptor(owner, index, false);
+	}
+
+	/**
+	 * Generates the descriptor of a method, either plain or mapped. The same
+	 * owner and index always yield the same descriptor.
+	 * @param owner the index of the owner class
+	 * @param index the index of the method
+	 * @param mapped whether the class names should be mapped
+	 * @return the descriptor
+	 */
+	public String methodDescriptor(int owner, int index, boolean mapped) {
+		Random random = new Random(this.seed * 31 + owner * 1009L + index);
+		StringBuilder sb = new StringBuilder("(");
+		int args = random.nextInt(4);
+		for(int i = 0; i < args; i++)
+			sb.append(this.randomType(random, mapped));
+		sb.append(')');
+		sb.append(random.nextInt(3) == 0 ? "V" : this.randomType(random, mapped));
+		return sb.toString();
+	}
+
+	/**
+	 * Generates the descriptor of a field, either plain or mapped.
+	 * @param owner the index of the owner class
+	 * @param index the index of the field
+	 * @param mapped whether the class names should be mapped
+	 * @return the descriptor
+	 */
+	public String fieldDescriptor(int owner, int index, boolean mapped) {
+		return this.randomType(new Random(this.seed * 17 + owner * 1013L + index), mapped);
+	}
+
+	/**
+	 * Picks a random type, which is a class reference most of the time.
+	 * @param random the {@link Random} to use
+	 * @param mapped whether the class name should be mapped
+	 * @return the type descriptor
+	 */
+	private String randomType(Random random, boolean mapped) {
+		switch(random.nextInt(6)) {
+			case 0: return "I";
+			case 1: return "Z";
+			case 2: return "Ljava/lang/String;";
+			default:
+				int target = random.nextInt(this.classes);
+				String name = mapped ? this.classNameMapped(target) : this.className(target);
+				return (random.nextInt(5) == 0 ? "[L" : "L") + name + ";";
+		}
+	}
+
+	/**
+	 * @return the mappings in TSRG format
+	 */
+	public List<String> tsrg() {
+		List<String> lines = new ArrayList<>();
+		lines.add("tsrg2 obf srg");
+		for(int c = 0; c < this.classes; c++) {
+			lines.add(this.className(c) + " " + this.classNameMapped(c));
+			for(int f = 0; f < this.fields; f++)
+				lines.add("\t" + this.fieldName(f) + " " + this.fieldNameMapped(c, f));
+			for(int m = 0; m < this.methods; m++)
+				lines.add("\t" + this.methodName(m) + " " + this.methodDescriptor(c, m) + " " + this.methodNameMapped(c, m));
+		}
+		return lines;
+	}
+
+	/**
+	 * @return the mappings in TinyV2 format
+	 */
+	public List<String> tiny() {
+		List<String> lines = new ArrayList<>();
+		lines.add("tiny\t2\t0\tofficial\tnamed");
+		for(int c = 0; c < this.classes; c++) {
+			lines.add("c\t" + this.className(c) + "\t" + this.classNameMapped(c));
+			for(int f = 0; f < this.fields; f++)
+				lines.add("\tf\t" + this.fieldDescriptor(c, f, false) + "\t" + this.fieldName(f) + "\t" + this.fieldNameMapped(c, f));
+			for(int m = 0; m < this.methods; m++)
+				lines.add("\tm\t" + this.methodDescriptor(c, m) + "\t" + this.methodName(m) + "\t" + this.methodNameMapped(c, m));
+		}
+		return lines;
+	}
+
+	/**
+	 * @return the mappings in SRG format
+	 */
+	public List<String> srg() {
+		List<String> lines = new ArrayList<>();
+		for(int c = 0; c < this.classes; c++) {
+			String name = this.className(c), nameMapped = this.classNameMapped(c);
+			lines.add("CL: " + name + " " + nameMapped);
+			for(int f = 0; f < this.fields; f++)
+				lines.add("FD: " + name + "/" + this.fieldName(f) + " " + nameMapped + "/" + this.fieldNameMapped(c, f));
+			for(int m = 0; m < this.methods; m++)
+				lines.add("MD: " + name + "/" + this.methodName(m) + " " + this.methodDescriptor(c, m, false)
+					+ " " + nameMapped + "/" + this.methodNameMapped(c, m) + " " + this.methodDescriptor(c, m, true));
+		}
+		return lines;
+	}
+
+	/**
+	 * Generates the mappings in the given format.
+	 * @param format either "tsrg", "tiny" or "srg"
+	 * @return the lines
+	 */
+	public List<String> lines(String format) {
+		switch(format) {
+			case "tsrg": return this.tsrg();
+			case "tiny": return this.tiny();
+			case "srg": return this.srg();
+			default: throw new IllegalArgumentException("Unknown format: " + format);
+		}
+	}
+}
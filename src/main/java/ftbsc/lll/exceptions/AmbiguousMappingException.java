@@ -0,0 +1,21 @@
+package ftbsc.lll.exceptions;
+
+import java.util.List;
+
+/**
+ * Thrown when a lookup with incomplete information (such as a partial method
+ * descriptor) matches more than one mapping.
+ */
+public class AmbiguousMappingException extends RuntimeException {
+
+	/**
+	 * Constructs a new ambiguous mapping exception for the specified mapping.
+	 * @param type the type of mapping
+	 * @param mapping the relevant mapping
+	 * @param candidates the mappings that matched
+	 */
+	public AmbiguousMappingException(String type, String mapping, List<String> candidates) {
+		super(String.format("Ambiguous mapping for %s %s, candidates are: %s!",
+			type, mapping, String.join(", ", candidates)));
+	}
+}
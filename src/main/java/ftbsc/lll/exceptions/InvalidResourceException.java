@@ -20,4 +20,13 @@ public class InvalidResourceException extends RuntimeException {
 	public InvalidResourceException(String name) {
 		super(String.format("Specified resource %s was not found!", name));
 	}
+
+	/**
+	 * Named constructor, used when the specified resource could not be read.
+	 * @param name the resource name
+	 * @param cause the error that occurred while reading it
+	 */
+	public InvalidResourceException(String name, Throwable cause) {
+		super(String.format("Specified resource %s could not be read!", name), cause);
+	}
 }
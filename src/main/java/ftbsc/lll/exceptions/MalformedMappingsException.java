@@ -14,4 +14,13 @@ public class MalformedMappingsException extends RuntimeException {
 	public MalformedMappingsException(int lineNumber, String error) {
 		super(String.format("Unexpected token at line %d: %s!", lineNumber, error));
 	}
+
+	/**
+	 * Constructs a new {@link MalformedMappingsException} for errors that
+	 * are not tied to a specific line.
+	 * @param error the error message
+	 */
+	public MalformedMappingsException(String error) {
+		super(String.format("Malformed mappings: %s!", error));
+	}
 }
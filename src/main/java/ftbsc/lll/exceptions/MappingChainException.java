@@ -0,0 +1,25 @@
+package ftbsc.lll.exceptions;
+
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Thrown when one or more stages of a chain of mappings could not be loaded.
+ * The error of each failed stage is attached as a suppressed exception.
+ */
+public class MappingChainException extends RuntimeException {
+
+	/**
+	 * Constructs a new mapping chain exception, given the errors of the failed stages.
+	 * @param failures a {@link Map} tying the location of each failed stage to its error,
+	 *                 in the order the stages were declared
+	 * @param total the total number of stages in the chain
+	 */
+	public MappingChainException(Map<String, Throwable> failures, int total) {
+		super(String.format("Failed to load %d out of %d chained mappings: %s!", failures.size(), total,
+			failures.entrySet().stream()
+				.map(e -> String.format("%s (%s)", e.getKey(), e.getValue().getMessage()))
+				.collect(Collectors.joining(", "))));
+		failures.values().forEach(this::addSuppressed);
+	}
+}
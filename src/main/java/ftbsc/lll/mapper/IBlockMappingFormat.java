@@ -0,0 +1,138 @@
+package ftbsc.lll.mapper;
+
+import ftbsc.lll.exceptions.MalformedMappingsException;
+import ftbsc.lll.mapper.utils.LazyMapper;
+import ftbsc.lll.mapper.utils.Mapper;
+import ftbsc.lll.mapper.utils.StringPool;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * A {@link IStreamingMappingFormat} for files made of a header followed by independent
+ * class blocks, each being an unindented line declaring a class and the indented
+ * lines declaring its members. Such files can be split at class boundaries and
+ * parsed in pieces.
+ */
+public interface IBlockMappingFormat extends IStreamingMappingFormat {
+	/**
+	 * The minimum amount of lines each chunk should have when parsing in parallel.
+	 */
+	int MIN_CHUNK_SIZE = 4096;
+
+	/**
+	 * Parses a sequence of whole class blocks into the given {@link Mapper}.
+	 * @param result the {@link Mapper} to populate
+	 * @param lines an {@link Iterator} over the lines to read, starting from a class line
+	 * @param lineNumber the number of the first line, used to report errors
+	 * @param ignoreErrors try to ignore errors and keep going
+	 * @param stringPool the {@link StringPool} to canonicalise strings with
+	 * @throws MalformedMappingsException if an error is encountered and ignoreErrors is false
+	 */
+	void parseBlocks(Mapper result, Iterator<String> lines, int lineNumber, boolean ignoreErrors,
+									 StringPool stringPool) throws MalformedMappingsException;
+
+	/**
+	 * Checks whether a line starts a new class block.
+	 * @param line the line
+	 * @return whether it's a class line
+	 */
+	default boolean isClassLine(String line) {
+		return !line.isEmpty() && !Character.isWhitespace(line.charAt(0));
+	}
+
+	/**
+	 * Extracts the plain name of the class declared by a class line, without
+	 * parsing the rest of its block. Implementations are encouraged to override
+	 * this, as the default parses the line into a throwaway {@link Mapper}.
+	 * @param line the class line
+	 * @return the plain name of the class, or null if the line is malformed
+	 */
+	default String getClassName(String line) {
+		Mapper probe = new Mapper();
+		this.parseBlocks(probe, Collections.singletonList(line).iterator(), 0, true, new StringPool());
+		Iterator<String> names = probe.getRawMappings().keySet().iterator();
+		return names.hasNext() ? names.next() : null;
+	}
+
+	/**
+	 * Memory-maps the file and indexes its class blocks, which are then only
+	 * parsed when first requested.
+	 * @param path the path of the file
+	 * @param ignoreErrors try to ignore errors and keep going
+	 * @return a {@link LazyMapper}
+	 * @throws IOException if the file could not be read
+	 * @throws MalformedMappingsException if an error is encountered and ignoreErrors is false
+	 */
+	@Override
+	default Mapper getLazyMapper(Path path, boolean ignoreErrors) throws IOException, MalformedMappingsException {
+		return LazyMapper.open(this, path, ignoreErrors);
+	}
+
+	@Override
+	default Mapper getMapper(Iterator<String> lines, boolean ignoreErrors, StringPool stringPool) throws MalformedMappingsException {
+		Mapper result = new Mapper();
+		if(lines.hasNext())
+			lines.next(); //skip header
+		this.parseBlocks(result, lines, 1, ignoreErrors, stringPool);
+		return result;
+	}
+
+	/**
+	 * Splits the lines into chunks at class boundaries, parses them on the given
+	 * {@link ForkJoinPool} and merges the results in their original order.
+	 * All chunks share the same {@link StringPool}.
+	 * @param lines the lines to read
+	 * @param ignoreErrors try to ignore errors and keep going
+	 * @param pool the {@link ForkJoinPool} to parse on
+	 * @return the {@link Mapper}
+	 * @throws MalformedMappingsException if an error is encountered and ignoreErrors is false
+	 */
+	@Override
+	default Mapper getMapper(List<String> lines, boolean ignoreErrors, ForkJoinPool pool) throws MalformedMappingsException {
+		int chunkSize = Math.max(MIN_CHUNK_SIZE, lines.size() / (pool.getParallelism() * 4) + 1);
+		if(lines.size() <= chunkSize)
+			return this.getMapper(lines, ignoreErrors);
+
+		long startTime = Instrumentation.ENABLED ? System.nanoTime() : 0;
+		StringPool stringPool = new StringPool();
+		List<Callable<Mapper>> tasks = new ArrayList<>();
+		int start = 1; //skip header
+		while(start < lines.size()) {
+			int end = Math.min(start + chunkSize, lines.size());
+			while(end < lines.size() && !this.isClassLine(lines.get(end)))
+				end++;
+			int from = start, to = end;
+			tasks.add(() -> {
+				Mapper chunk = new Mapper();
+				this.parseBlocks(chunk, lines.subList(from, to).iterator(), from, ignoreErrors, stringPool);
+				return chunk;
+			});
+			start = end;
+		}
+
+		Mapper result = new Mapper();
+		try {
+			for(Future<Mapper> chunk : pool.invokeAll(tasks))
+				result.getRawMappings().putAll(chunk.get().getRawMappings());
+		} catch(ExecutionException e) {
+			if(e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new RuntimeException(e.getCause());
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		if(Instrumentation.ENABLED)
+			Instrumentation.report(this, result, System.nanoTime() - startTime, lines.size(), stringPool);
+		return result;
+	}
+}
@@ -0,0 +1,80 @@
+package ftbsc.lll.mapper;
+
+import ftbsc.lll.mapper.utils.DescriptorCache;
+import ftbsc.lll.mapper.utils.Mapper;
+
+/**
+ * A service receiving metrics about what the library is doing, such as how long
+ * parsing takes and how lookups fare. Implementations are discovered through the
+ * Java Service API, and only the first one found is used; when there is none,
+ * every hook is skipped altogether, at no cost.
+ * Hooks may be called from multiple threads at once, and should return quickly.
+ * Every hook does nothing by default, so implementations only need to override
+ * what they care about.
+ * @see Instrumentation
+ */
+public interface IMapperInstrumentation {
+	/**
+	 * The kinds of lookup a {@link Mapper} performs.
+	 */
+	enum LookupKind {
+		/**
+		 * A class lookup.
+		 */
+		CLASS,
+
+		/**
+		 * A method lookup.
+		 */
+		METHOD,
+
+		/**
+		 * A field lookup.
+		 */
+		FIELD
+	}
+
+	/**
+	 * Called after a mapping file has been parsed.
+	 * @param format the {@link IMappingFormat} that parsed it
+	 * @param nanos how long it took, in nanoseconds
+	 * @param lines the number of lines read, header included
+	 * @param classes the number of classes parsed
+	 * @param members the number of methods and fields parsed
+	 */
+	default void onParse(IMappingFormat format, long nanos, long lines, int classes, int members) {}
+
+	/**
+	 * Called after a {@link Mapper} has been loaded.
+	 * @param mapper the {@link Mapper}
+	 * @param estimatedRetainedBytes a rough estimate of the memory it retains, in bytes
+	 */
+	default void onLoad(Mapper mapper, long estimatedRetainedBytes) {}
+
+	/**
+	 * Called after {@link MapperProvider} has picked the format of a file.
+	 * @param format the {@link IMappingFormat} that was picked
+	 * @param nanos how long it took, in nanoseconds
+	 */
+	default void onDetect(IMappingFormat format, long nanos) {}
+
+	/**
+	 * Called after {@link MapperProvider} has opened a resource.
+	 * @param location the location of the resource
+	 * @param nanos how long it took to open it, in nanoseconds
+	 */
+	default void onFetch(String location, long nanos) {}
+
+	/**
+	 * Called after a {@link Mapper} has looked something up.
+	 * @param kind what was looked up
+	 * @param hit whether it was found
+	 */
+	default void onLookup(LookupKind kind, boolean hit) {}
+
+	/**
+	 * Called after a {@link DescriptorCache} has been queried.
+	 * @param hit whether the translation was already cached
+	 */
+	default void onDescriptorLookup(boolean hit) {}
+}
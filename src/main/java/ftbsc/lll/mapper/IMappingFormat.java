@@ -2,11 +2,22 @@ package ftbsc.lll.mapper;
 
 import ftbsc.lll.exceptions.MalformedMappingsException;
 import ftbsc.lll.mapper.utils.Mapper;
+import ftbsc.lll.mapper.utils.StringPool;
 
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * The shared interface between all mappers.
+ * A single instance of each implementation is shared by the {@link MapperProvider},
+ * so implementations should be stateless and safe to use from multiple threads.
  */
 public interface IMappingFormat {
 	/**
@@ -16,6 +27,18 @@ public interface IMappingFormat {
 	 */
 	boolean claim(List<String> lines);
 
+	/**
+	 * Checks whether this mapper can process a file, given only its first line.
+	 * By default, the header is passed alone to {@link #claim(List)}: formats
+	 * which can tell from the header should override this.
+	 * @param header the first line of the file
+	 * @return whether this type of mapper can process the file
+	 * @see IStreamingMappingFormat
+	 */
+	default boolean claim(String header) {
+		return this.claim(Collections.singletonList(header));
+	}
+
 	/**
 	 * Defines a priority for this implementation: the higher the number,
 	 * the higher the priority.
@@ -27,6 +50,47 @@ public interface IMappingFormat {
 		return 0;
 	}
 
+	/**
+	 * Lists the other resources the given file pulls in, if any. By default, a file
+	 * is self-contained and this is empty.
+	 * @param lines the lines of the file, header included
+	 * @return the locations of the resources it depends on
+	 */
+	default List<String> getDependencies(List<String> lines) {
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Creates a {@link Mapper} reading the lines from the given {@link Iterator},
+	 * ignoring errors depending on the given flag, canonicalising names and descriptors
+	 * through the given {@link StringPool} if the format supports it. By default, the
+	 * pool is ignored.
+	 * @param lines an {@link Iterator} over the lines to read, header included
+	 * @param ignoreErrors try to ignore errors and keep going
+	 * @param stringPool the {@link StringPool} to canonicalise strings with
+	 * @return the {@link Mapper}
+	 * @throws MalformedMappingsException if an error is encountered and ignoreErrors is false
+	 */
+	default Mapper getMapper(Iterator<String> lines, boolean ignoreErrors, StringPool stringPool) throws MalformedMappingsException {
+		return this.getMapper(lines, ignoreErrors);
+	}
+
+	/**
+	 * Creates a {@link Mapper} reading the lines from the given {@link Iterator},
+	 * ignoring errors depending on the given flag. By default, the lines are collected
+	 * into a {@link List} and passed to {@link #getMapper(List, boolean)}: formats which
+	 * can parse them one by one should implement {@link IStreamingMappingFormat} instead.
+	 * @param lines an {@link Iterator} over the lines to read, header included
+	 * @param ignoreErrors try to ignore errors and keep going
+	 * @return the {@link Mapper}
+	 * @throws MalformedMappingsException if an error is encountered and ignoreErrors is false
+	 */
+	default Mapper getMapper(Iterator<String> lines, boolean ignoreErrors) throws MalformedMappingsException {
+		List<String> collected = new ArrayList<>();
+		lines.forEachRemaining(collected::add);
+		return this.getMapper(collected, ignoreErrors);
+	}
+
 	/**
 	 * Creates a {@link Mapper} given the lines, ignoring errors depending on the given flag.
 	 * @param lines the lines to read
@@ -36,6 +100,65 @@ public interface IMappingFormat {
 	 */
 	Mapper getMapper(List<String> lines, boolean ignoreErrors) throws MalformedMappingsException;
 
+	/**
+	 * Creates a {@link Mapper} given the lines, ignoring errors depending on the given flag,
+	 * and splitting the work across the given {@link ForkJoinPool} if the format allows it.
+	 * By default, the lines are simply parsed sequentially.
+	 * @param lines the lines to read
+	 * @param ignoreErrors try to ignore errors and keep going
+	 * @param pool the {@link ForkJoinPool} to parse on
+	 * @return the {@link Mapper}
+	 * @throws MalformedMappingsException if an error is encountered and ignoreErrors is false
+	 */
+	default Mapper getMapper(List<String> lines, boolean ignoreErrors, ForkJoinPool pool) throws MalformedMappingsException {
+		return this.getMapper(lines, ignoreErrors);
+	}
+
+	/**
+	 * Creates a {@link Mapper} streaming the lines from the given {@link Reader}, ignoring
+	 * errors depending on the given flag. The {@link Reader} is not closed.
+	 * @param reader the {@link Reader} to read from
+	 * @param ignoreErrors try to ignore errors and keep going
+	 * @return the {@link Mapper}
+	 * @throws MalformedMappingsException if an error is encountered and ignoreErrors is false
+	 */
+	default Mapper getMapper(Reader reader, boolean ignoreErrors) throws MalformedMappingsException {
+		BufferedReader bufferedReader = reader instanceof BufferedReader
+			? (BufferedReader) reader
+			: new BufferedReader(reader);
+		return this.getMapper(bufferedReader.lines().iterator(), ignoreErrors);
+	}
+
+	/**
+	 * Creates a {@link Mapper} for the file at the given path which only parses what
+	 * is actually requested, if the format allows it. By default, the whole file is
+	 * streamed and parsed upfront.
+	 * @param path the path of the file
+	 * @param ignoreErrors try to ignore errors and keep going
+	 * @return the {@link Mapper}
+	 * @throws IOException if the file could not be read
+	 * @throws MalformedMappingsException if an error is encountered and ignoreErrors is false
+	 */
+	default Mapper getLazyMapper(Path path, boolean ignoreErrors) throws IOException, MalformedMappingsException {
+		try(BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+			return this.getMapper(reader, ignoreErrors);
+		} catch(UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Creates a {@link Mapper} reading the lines one by one from the given {@link Iterator},
+	 * ignoring errors depending on the given flag, and returns its inverted form.
+	 * @param lines an {@link Iterator} over the lines to read, header included
+	 * @param ignoreErrors try to ignore errors and keep going
+	 * @return the inverted {@link Mapper}
+	 * @throws MalformedMappingsException if an error is encountered and ignoreErrors is false
+	 */
+	default Mapper getInvertedMapper(Iterator<String> lines, boolean ignoreErrors) throws MalformedMappingsException {
+		return this.getMapper(lines, ignoreErrors).getInverted();
+	}
+
 	/**
 	 * Creates a {@link Mapper} given the lines, ignoring errors depending on the given flag, and
 	 * returns its inverted form.
@@ -45,6 +168,6 @@ public interface IMappingFormat {
 	 * @throws MalformedMappingsException if an error is encountered and ignoreErrors is false
 	 */
 	default Mapper getInvertedMapper(List<String> lines, boolean ignoreErrors) throws MalformedMappingsException {
-		return this.getMapper(lines, ignoreErrors).getInverted();
+		return this.getInvertedMapper(lines.iterator(), ignoreErrors);
 	}
 }
@@ -0,0 +1,72 @@
+package ftbsc.lll.mapper;
+
+import ftbsc.lll.exceptions.MalformedMappingsException;
+import ftbsc.lll.mapper.utils.Mapper;
+import ftbsc.lll.mapper.utils.StringPool;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A {@link IMappingFormat} which can tell a file apart from its first line alone,
+ * and parse it one line at a time without ever holding it in memory as a whole.
+ * The {@link List}-based methods are implemented on top of the streaming ones.
+ */
+public interface IStreamingMappingFormat extends IMappingFormat {
+	/**
+	 * Checks whether this mapper can process a file, given only its first line.
+	 * @param header the first line of the file
+	 * @return whether this type of mapper can process the file
+	 */
+	@Override
+	boolean claim(String header);
+
+	/**
+	 * Checks whether this mapper can process the given lines, by looking at the first one.
+	 * @param lines the lines to read
+	 * @return whether this type of mapper can process these lines
+	 */
+	@Override
+	default boolean claim(List<String> lines) {
+		return !lines.isEmpty() && this.claim(lines.get(0));
+	}
+
+	/**
+	 * Creates a {@link Mapper} reading the lines one by one from the given {@link Iterator},
+	 * ignoring errors depending on the given flag. The lines are never held in memory
+	 * all at once, so this is the preferred way to process large files.
+	 * Names and descriptors are canonicalised through the given {@link StringPool}.
+	 * @param lines an {@link Iterator} over the lines to read, header included
+	 * @param ignoreErrors try to ignore errors and keep going
+	 * @param stringPool the {@link StringPool} to canonicalise strings with
+	 * @return the {@link Mapper}
+	 * @throws MalformedMappingsException if an error is encountered and ignoreErrors is false
+	 */
+	@Override
+	Mapper getMapper(Iterator<String> lines, boolean ignoreErrors, StringPool stringPool) throws MalformedMappingsException;
+
+	/**
+	 * Creates a {@link Mapper} reading the lines one by one from the given {@link Iterator},
+	 * ignoring errors depending on the given flag, with a {@link StringPool} of its own.
+	 * @param lines an {@link Iterator} over the lines to read, header included
+	 * @param ignoreErrors try to ignore errors and keep going
+	 * @return the {@link Mapper}
+	 * @throws MalformedMappingsException if an error is encountered and ignoreErrors is false
+	 */
+	@Override
+	default Mapper getMapper(Iterator<String> lines, boolean ignoreErrors) throws MalformedMappingsException {
+		return Instrumentation.parse(this, lines, ignoreErrors, new StringPool());
+	}
+
+	/**
+	 * Creates a {@link Mapper} given the lines, ignoring errors depending on the given flag.
+	 * @param lines the lines to read
+	 * @param ignoreErrors try to ignore errors and keep going
+	 * @return the {@link Mapper}
+	 * @throws MalformedMappingsException if an error is encountered and ignoreErrors is false
+	 */
+	@Override
+	default Mapper getMapper(List<String> lines, boolean ignoreErrors) throws MalformedMappingsException {
+		return this.getMapper(lines.iterator(), ignoreErrors);
+	}
+}
@@ -0,0 +1,50 @@
+package ftbsc.lll.mapper;
+
+import ftbsc.lll.mapper.utils.Mapper;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A {@link IMappingFormat} which, besides being read, can also be written.
+ */
+public interface IWritableMappingFormat extends IMappingFormat {
+	/**
+	 * Writes a {@link Mapper} in this format, one class at a time. Classes are
+	 * written sorted by name and their members sorted by name and descriptor,
+	 * so the same mappings always yield the same output. The {@link Writer} is
+	 * neither flushed nor closed.
+	 * @param mapper the {@link Mapper} to write
+	 * @param writer the {@link Writer} to write to
+	 * @throws IOException if something goes wrong while writing
+	 */
+	void write(Mapper mapper, Writer writer) throws IOException;
+
+	/**
+	 * Writes a {@link Mapper} in this format to an {@link OutputStream}, as UTF-8.
+	 * The stream is flushed, but not closed.
+	 * @param mapper the {@link Mapper} to write
+	 * @param out the {@link OutputStream} to write to
+	 * @throws IOException if something goes wrong while writing
+	 * @see #write(Mapper, Writer)
+	 */
+	default void write(Mapper mapper, OutputStream out) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+		this.write(mapper, writer);
+		writer.flush();
+	}
+
+	/**
+	 * Writes a {@link Mapper} in this format to a {@link WritableByteChannel}, as UTF-8.
+	 * The channel is not closed.
+	 * @param mapper the {@link Mapper} to write
+	 * @param channel the {@link WritableByteChannel} to write to
+	 * @throws IOException if something goes wrong while writing
+	 * @see #write(Mapper, Writer)
+	 */
+	default void write(Mapper mapper, WritableByteChannel channel) throws IOException {
+		this.write(mapper, Channels.newOutputStream(channel));
+	}
+}
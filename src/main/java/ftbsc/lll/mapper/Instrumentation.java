@@ -0,0 +1,104 @@
+package ftbsc.lll.mapper;
+
+import ftbsc.lll.mapper.data.ClassData;
+import ftbsc.lll.mapper.utils.Mapper;
+import ftbsc.lll.mapper.utils.StringPool;
+
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * Holds the {@link IMapperInstrumentation} in use, if any. Both fields are
+ * constants, so call sites guarded by {@link #ENABLED} are compiled away when
+ * no implementation is available.
+ */
+public final class Instrumentation {
+	/**
+	 * The rough size of a {@link ClassData} and its maps, in bytes.
+	 */
+	private static final int CLASS_OVERHEAD = 160;
+
+	/**
+	 * The rough size of a member, its signature and its map entry, in bytes.
+	 */
+	private static final int MEMBER_OVERHEAD = 96;
+
+	/**
+	 * The {@link IMapperInstrumentation} in use, which does nothing if none was found.
+	 */
+	public static final IMapperInstrumentation INSTANCE;
+
+	/**
+	 * Whether an {@link IMapperInstrumentation} was found. Hooks should only be
+	 * called, and their arguments only computed, if this is true.
+	 */
+	public static final boolean ENABLED;
+
+	static {
+		IMapperInstrumentation found = null;
+		try {
+			Iterator<IMapperInstrumentation> services = ServiceLoader.load(IMapperInstrumentation.class).iterator();
+			if(services.hasNext())
+				found = services.next();
+		} catch(ServiceConfigurationError ignored) {} //instrumentation is optional
+		ENABLED = found != null;
+		INSTANCE = found != null ? found : new IMapperInstrumentation() {};
+	}
+
+	/**
+	 * This class only holds constants and helpers.
+	 */
+	private Instrumentation() {}
+
+	/**
+	 * Parses a {@link Mapper} with the given format, reporting on it if instrumentation
+	 * is enabled.
+	 * @param format the {@link IMappingFormat} to parse with
+	 * @param lines an {@link Iterator} over the lines to read, header included
+	 * @param ignoreErrors try to ignore errors and keep going
+	 * @param stringPool the {@link StringPool} to canonicalise strings with
+	 * @return the {@link Mapper}
+	 */
+	public static Mapper parse(IMappingFormat format, Iterator<String> lines, boolean ignoreErrors, StringPool stringPool) {
+		if(!ENABLED)
+			return format.getMapper(lines, ignoreErrors, stringPool);
+		long[] count = { 0 };
+		Iterator<String> counted = new Iterator<String>() {
+			@Override
+			public boolean hasNext() {
+				return lines.hasNext();
+			}
+
+			@Override
+			public String next() {
+				count[0]++;
+				return lines.next();
+			}
+		};
+		long start = System.nanoTime();
+		Mapper mapper = format.getMapper(counted, ignoreErrors, stringPool);
+		report(format, mapper, System.nanoTime() - start, count[0], stringPool);
+		return mapper;
+	}
+
+	/**
+	 * Reports on a freshly parsed {@link Mapper}. It should only be called if
+	 * instrumentation is enabled.
+	 * @param format the {@link IMappingFormat} that parsed it
+	 * @param mapper the {@link Mapper}
+	 * @param nanos how long it took, in nanoseconds
+	 * @param lines the number of lines read
+	 * @param stringPool the {@link StringPool} it was parsed with
+	 */
+	public static void report(IMappingFormat format, Mapper mapper, long nanos, long lines, StringPool stringPool) {
+		int classes = 0, members = 0;
+		for(ClassData data : mapper.getRawMappings().values()) {
+			classes++;
+			members += data.getMethods().size() + data.getFields().size();
+		}
+		INSTANCE.onParse(format, nanos, lines, classes, members);
+		INSTANCE.onLoad(mapper, stringPool.getEstimatedRetainedBytes()
+			+ (long) classes * CLASS_OVERHEAD + (long) members * MEMBER_OVERHEAD);
+	}
+}
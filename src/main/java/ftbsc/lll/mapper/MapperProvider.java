@@ -1,46 +1,79 @@
 package ftbsc.lll.mapper;
 
 import ftbsc.lll.exceptions.InvalidResourceException;
+import ftbsc.lll.exceptions.MalformedMappingsException;
+import ftbsc.lll.mapper.utils.AsyncMapper;
+import ftbsc.lll.mapper.utils.Mapper;
+import ftbsc.lll.mapper.utils.ResourceCache;
+import ftbsc.lll.mapper.utils.StringPool;
 
 import java.io.*;
+import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * The main class of the mapper library. It loads all the
  * valid {@link IMappingFormat}s and gets information from them.
+ * It's thread-safe: the formats are only loaded once, and shared.
  */
 public class MapperProvider {
 	/**
-	 * The static instance of the provider.
+	 * The maximum length of the header line, when reading it to detect the format
+	 * of a resource that is being streamed.
 	 */
-	private static MapperProvider INSTANCE = null;
+	private static final int MAX_HEADER_LENGTH = 1 << 16;
+
+	/**
+	 * The {@link ResourceCache} remote resources are fetched through, or null
+	 * if they should be downloaded every time.
+	 */
+	private static volatile ResourceCache resourceCache = null;
+
+	/**
+	 * Holds the static instance of the provider, which is created the first time
+	 * it's needed. The class loader guarantees this happens exactly once, even
+	 * when multiple threads get there at the same time.
+	 */
+	private static class Holder {
+		/**
+		 * The static instance of the provider.
+		 */
+		private static final MapperProvider INSTANCE = new MapperProvider();
+	}
 
 	/**
 	 * @return the static instance of the provider
 	 */
 	private static MapperProvider getInstance() {
-		return INSTANCE == null ? (INSTANCE = new MapperProvider()) : INSTANCE;
+		return Holder.INSTANCE;
 	}
 
 	/**
-	 * A {@link Set} containing all the loaded mapper classes.
+	 * An immutable {@link List} containing one shared instance of each loaded
+	 * format, sorted by descending {@link IMappingFormat#priority() priority}.
 	 */
-	private Set<Class<? extends IMappingFormat>> loadedMappers = null;
+	private final List<IMappingFormat> loadedMappers;
 
 	/**
-	 * Loads the mapper classes into a {@link Set}.
+	 * The constructor. It loads the formats available in the classpath, via the
+	 * Java Service API.
 	 */
-	private void loadMappers() {
-		this.loadedMappers = new HashSet<>();
+	private MapperProvider() {
+		List<IMappingFormat> formats = new ArrayList<>();
 		for(IMappingFormat mapper: ServiceLoader.load(IMappingFormat.class))
-			this.loadedMappers.add(mapper.getClass());
-		if(this.loadedMappers.isEmpty())
+			formats.add(mapper);
+		if(formats.isEmpty())
 			throw new RuntimeException("Something went wrong: no mapper types were loaded successfully!");
+		formats.sort(Comparator.comparingInt(IMappingFormat::priority).reversed());
+		this.loadedMappers = Collections.unmodifiableList(formats);
 	}
 
 	/**
@@ -51,41 +84,191 @@ public class MapperProvider {
 	 * @return a {@link IMappingFormat} (populating it is left to the user)
 	 */
 	public static IMappingFormat getMapper(List<String> data) {
-		if(getInstance().loadedMappers == null)
-			getInstance().loadMappers();
-		return getInstance().loadedMappers.stream()
-			.flatMap(clazz -> {
-				try {
-					return Stream.of(clazz.newInstance());
-				} catch(ReflectiveOperationException ignored) {}
-				return Stream.empty();
-			}).filter(m -> m.claim(data))
-			.max(Comparator.comparingInt(IMappingFormat::priority))
-			.orElseThrow(InvalidResourceException::new);
+		long start = Instrumentation.ENABLED ? System.nanoTime() : 0;
+		for(IMappingFormat format : getInstance().loadedMappers) {
+			if(format.claim(data)) {
+				if(Instrumentation.ENABLED)
+					Instrumentation.INSTANCE.onDetect(format, System.nanoTime() - start);
+				return format;
+			}
+		}
+		throw new InvalidResourceException();
 	}
 
 	/**
-	 * Gets a resource and parses it into a {@link List} of {@link String}s.
+	 * Finds the loaded format that can handle a file with the given header. The
+	 * returned instance is shared, and may be used concurrently.
+	 * @param header the first line of the file
+	 * @return a {@link IMappingFormat} (populating it is left to the user)
+	 */
+	public static IMappingFormat getMapper(String header) {
+		long start = Instrumentation.ENABLED ? System.nanoTime() : 0;
+		for(IMappingFormat format : getInstance().loadedMappers) {
+			if(format.claim(header)) {
+				if(Instrumentation.ENABLED)
+					Instrumentation.INSTANCE.onDetect(format, System.nanoTime() - start);
+				return format;
+			}
+		}
+		throw new InvalidResourceException();
+	}
+
+	/**
+	 * Finds the format of the resource at the given location, reading only its first line.
 	 * @param location either a URL or a local path
-	 * @return a {@link List} containing the lines of the resource
+	 * @return a {@link IMappingFormat} (populating it is left to the user)
 	 * @throws InvalidResourceException if provided an invalid resource
 	 */
-	public static List<String> fetchFromLocalOrRemote(String location) {
-		InputStream targetStream;
+	public static IMappingFormat detectFormat(String location) {
+		try(BufferedReader reader = openFromLocalOrRemote(location)) {
+			String header = reader.readLine();
+			if(header == null)
+				throw new InvalidResourceException();
+			return getMapper(header);
+		} catch(IOException e) {
+			throw new InvalidResourceException(location, e);
+		}
+	}
+
+	/**
+	 * Streams the resource at the given location into a {@link Mapper}, picking the
+	 * format from its first line. The resource is never held in memory as a whole.
+	 * @param location either a URL or a local path
+	 * @param ignoreErrors try to ignore errors and keep going
+	 * @return the {@link Mapper}
+	 * @throws InvalidResourceException if provided an invalid resource
+	 * @throws MalformedMappingsException if an error is encountered and ignoreErrors is false
+	 */
+	public static Mapper loadMapper(String location, boolean ignoreErrors) {
+		return loadMapper(location, ignoreErrors, new StringPool());
+	}
+
+	/**
+	 * Streams the resource at the given location into a {@link Mapper}, picking the
+	 * format from its first line, and canonicalising strings through the given pool.
+	 * @param location either a URL or a local path
+	 * @param ignoreErrors try to ignore errors and keep going
+	 * @param stringPool the {@link StringPool} to canonicalise strings with
+	 * @return the {@link Mapper}
+	 * @throws InvalidResourceException if provided an invalid resource
+	 * @throws MalformedMappingsException if an error is encountered and ignoreErrors is false
+	 */
+	public static Mapper loadMapper(String location, boolean ignoreErrors, StringPool stringPool) {
+		try(BufferedReader reader = openFromLocalOrRemote(location)) {
+			reader.mark(MAX_HEADER_LENGTH);
+			String header = reader.readLine();
+			if(header == null)
+				throw new InvalidResourceException();
+			reader.reset();
+			return Instrumentation.parse(getMapper(header), reader.lines().iterator(), ignoreErrors, stringPool);
+		} catch(IOException | UncheckedIOException e) {
+			throw new InvalidResourceException(location, e);
+		}
+	}
+
+	/**
+	 * Starts loading the resource at the given location in the background, picking the
+	 * format from its first line. Classes can be looked up, or awaited, while the rest
+	 * of the resource is still being fetched and parsed.
+	 * @param location either a URL or a local path
+	 * @param ignoreErrors try to ignore errors and keep going
+	 * @param executor the {@link Executor} to fetch and parse on
+	 * @return the {@link AsyncMapper}, which fills up as the resource is parsed
+	 * @see AsyncMapper#whenLoaded()
+	 * @see AsyncMapper#awaitClass(String)
+	 */
+	public static AsyncMapper loadMapperAsync(String location, boolean ignoreErrors, Executor executor) {
+		return AsyncMapper.load(location, ignoreErrors, executor);
+	}
+
+	/**
+	 * Loads the local file at the given path into a {@link Mapper} which, if the format
+	 * allows it, only parses the classes that are actually requested, picking the format
+	 * from its first line.
+	 * @param path the path of the file
+	 * @param ignoreErrors try to ignore errors and keep going
+	 * @return the {@link Mapper}
+	 * @throws InvalidResourceException if provided an invalid resource
+	 * @throws MalformedMappingsException if an error is encountered and ignoreErrors is false
+	 * @see IMappingFormat#getLazyMapper(Path, boolean)
+	 */
+	public static Mapper loadLazyMapper(Path path, boolean ignoreErrors) {
+		try {
+			String header;
+			try(BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+				header = reader.readLine();
+			}
+			if(header == null)
+				throw new InvalidResourceException();
+			return getMapper(header).getLazyMapper(path, ignoreErrors);
+		} catch(IOException | UncheckedIOException e) {
+			throw new InvalidResourceException(path.toString(), e);
+		}
+	}
+
+	/**
+	 * Sets the {@link ResourceCache} remote resources should be fetched through.
+	 * @param cache the {@link ResourceCache}, or null to disable caching
+	 */
+	public static void setResourceCache(ResourceCache cache) {
+		resourceCache = cache;
+	}
+
+	/**
+	 * @return the {@link ResourceCache} remote resources are fetched through, may be null
+	 */
+	public static ResourceCache getResourceCache() {
+		return resourceCache;
+	}
+
+	/**
+	 * Opens a resource for reading. Remote resources go through the
+	 * {@link ResourceCache}, if one was set.
+	 * @param location either a URL or a local path
+	 * @return a {@link BufferedReader} over the resource, which the caller should close
+	 * @throws InvalidResourceException if provided an invalid resource
+	 */
+	public static BufferedReader openFromLocalOrRemote(String location) {
+		long start = Instrumentation.ENABLED ? System.nanoTime() : 0;
+		URL target;
 		try {
-			URI target = new URI(location);
-			targetStream = target.toURL().openStream();
-		} catch(URISyntaxException | IllegalArgumentException | IOException e) {
-			//may be a local file path
-			File f = new File(location);
+			target = new URI(location).toURL();
+		} catch(URISyntaxException | IllegalArgumentException | MalformedURLException e) {
+			target = null; //may be a local file path
+		}
+
+		InputStream targetStream;
+		if(target != null) {
 			try {
-				targetStream = new FileInputStream(f);
-			} catch(FileNotFoundException ex) {
-				throw new InvalidResourceException(location);
+				ResourceCache cache = resourceCache;
+				targetStream = cache == null ? target.openStream() : cache.open(target);
+			} catch(IOException e) {
+				throw new InvalidResourceException(location, e);
+			}
+		} else {
+			try {
+				targetStream = new FileInputStream(location);
+			} catch(FileNotFoundException e) {
+				throw new InvalidResourceException(location, e);
 			}
 		}
 
-		return new BufferedReader(new InputStreamReader(targetStream,
-			StandardCharsets.UTF_8)).lines().collect(Collectors.toList());
+		if(Instrumentation.ENABLED)
+			Instrumentation.INSTANCE.onFetch(location, System.nanoTime() - start);
+		return new BufferedReader(new InputStreamReader(targetStream, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Gets a resource and parses it into a {@link List} of {@link String}s.
+	 * @param location either a URL or a local path
+	 * @return a {@link List} containing the lines of the resource
+	 * @throws InvalidResourceException if provided an invalid resource
+	 */
+	public static List<String> fetchFromLocalOrRemote(String location) {
+		try(BufferedReader reader = openFromLocalOrRemote(location)) {
+			return reader.lines().collect(Collectors.toList());
+		} catch(IOException | UncheckedIOException e) {
+			throw new InvalidResourceException(location, e);
+		}
 	}
 }
@@ -1,19 +1,23 @@
 package ftbsc.lll.mapper.data;
 
+import ftbsc.lll.exceptions.AmbiguousMappingException;
 import ftbsc.lll.exceptions.MappingNotFoundException;
 import ftbsc.lll.mapper.utils.Mapper;
 import ftbsc.lll.mapper.utils.MappingUtils;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.*;
 
 /**
  * Container class used to store information about classes.
  */
 public class ClassData {
 
+	/**
+	 * The order used to index methods: by name, and then by descriptor.
+	 */
+	static final Comparator<MethodData> METHOD_ORDER = Comparator.<MethodData, String>comparing(m -> m.signature.name)
+		.thenComparing(m -> m.signature.descriptor);
+
 	/**
 	 * The internal (like the fully-qualified name, but with '/' instead
 	 * of '.') of the class.
@@ -36,16 +40,34 @@ public class ClassData {
 	 */
 	private final Map<String, FieldData> fields;
 
+	/**
+	 * The methods sorted by name and then by descriptor, used to resolve partial
+	 * descriptors through a binary search. It's built lazily, and discarded every
+	 * time a method is added.
+	 */
+	private volatile MethodData[] methodIndex;
+
 	/**
 	 * The constructor. It takes in the names (plain and mapped) of a class.
 	 * @param name the plain name
 	 * @param nameMapped the mapped name
 	 */
 	public ClassData(String name, String nameMapped) {
+		this(name, nameMapped, new HashMap<>(), new HashMap<>());
+	}
+
+	/**
+	 * The full constructor, for subclasses which store their members differently.
+	 * @param name the plain name
+	 * @param nameMapped the mapped name
+	 * @param methods the {@link Map} to store methods in
+	 * @param fields the {@link Map} to store fields in
+	 */
+	protected ClassData(String name, String nameMapped, Map<MethodSignature, MethodData> methods, Map<String, FieldData> fields) {
 		this.name = name;
 		this.nameMapped = nameMapped;
-		this.methods = new HashMap<>();
-		this.fields = new HashMap<>();
+		this.methods = methods;
+		this.fields = fields;
 	}
 
 	/**
@@ -57,6 +79,7 @@ public class ClassData {
 	public void addMethod(String name, String nameMapped, String descriptor) {
 		MethodData data = new MethodData(this, name, nameMapped, descriptor);
 		this.methods.put(data.signature, data);
+		this.methodIndex = null;
 	}
 
 	/**
@@ -87,9 +110,9 @@ public class ClassData {
 	 */
 	public ClassData generateReverseMappings(Mapper mapper) {
 		ClassData reverse = new ClassData(this.nameMapped, this.name);
-		this.methods.forEach((signature, data) -> reverse.addMethod(nameMapped, signature.name,
+		this.getMethods().forEach((signature, data) -> reverse.addMethod(data.nameMapped, signature.name,
 			MappingUtils.mapMethodDescriptor(signature.descriptor, mapper, false)));
-		this.fields.forEach((name, data) -> reverse.addField(data.nameMapped, name, data.descriptor));
+		this.getFields().forEach((name, data) -> reverse.addField(data.nameMapped, name, data.descriptor));
 		return reverse;
 	}
 
@@ -100,17 +123,106 @@ public class ClassData {
 	 * @param methodDescriptor the method descriptor, which may be partial
 	 * @return the requested {@link MethodData}
 	 * @throws MappingNotFoundException if the mapping wasn't found
+	 * @throws AmbiguousMappingException if the partial descriptor matches more than one method
 	 */
 	public MethodData mapMethod(String methodName, String methodDescriptor) {
-		List<MethodSignature> signatures = this.methods.keySet().stream().filter(
-			s -> s.name.equals(methodName) && s.descriptor.startsWith(methodDescriptor)
-		).collect(Collectors.toList());
-		if(signatures.size() > 1)
-			throw new RuntimeException(); //should never happen unless something goes horribly wrong
-		else if(signatures.isEmpty())
-			throw new MappingNotFoundException("method",
-				String.format("%s::%s%s", this.name, methodName, methodDescriptor));
-		return this.methods.get(signatures.get(0));
+		MethodData data = this.findMethod(methodName, methodDescriptor);
+		if(data == null)
+			throw new MappingNotFoundException("method", String.format("%s::%s%s", this.name, methodName, methodDescriptor));
+		else return data;
+	}
+
+	/**
+	 * Looks up the {@link MethodData} from its name and descriptor, which may be partial,
+	 * without throwing if it's missing.
+	 * @param methodName the method name
+	 * @param methodDescriptor the method descriptor, which may be partial
+	 * @return the requested {@link MethodData}, or null if the mapping wasn't found
+	 * @throws AmbiguousMappingException if the partial descriptor matches more than one method
+	 */
+	public MethodData findMethod(String methodName, String methodDescriptor) {
+		MethodData data = this.methods.get(new MethodSignature(methodName, methodDescriptor));
+		if(data != null)
+			return data;
+
+		MethodData[] index = this.getMethodIndex();
+		int first = lowerBound(index, methodName, methodDescriptor);
+		int last = first;
+		while(last < index.length && matches(index[last], methodName, methodDescriptor))
+			last++;
+
+		if(last == first)
+			return null;
+		return this.pickMethod(index, first, last, methodName, methodDescriptor);
+	}
+
+	/**
+	 * Picks the only method in the given non-empty range of the index, failing if
+	 * there's more than one.
+	 * @param index the sorted method index
+	 * @param first the first matching position, inclusive
+	 * @param last the last matching position, exclusive
+	 * @param methodName the requested method name
+	 * @param methodDescriptor the requested method descriptor, which may be partial
+	 * @return the matching {@link MethodData}
+	 * @throws AmbiguousMappingException if the range contains more than one method
+	 */
+	MethodData pickMethod(MethodData[] index, int first, int last, String methodName, String methodDescriptor) {
+		if(last - first == 1)
+			return index[first];
+		String mapping = String.format("%s::%s%s", this.name, methodName, methodDescriptor);
+		List<String> candidates = new ArrayList<>();
+		for(int i = first; i < last; i++)
+			candidates.add(index[i].signature.name + index[i].signature.descriptor);
+		throw new AmbiguousMappingException("method", mapping, candidates);
+	}
+
+	/**
+	 * Gets the sorted method index, rebuilding it if it's missing or stale.
+	 * @return the methods, sorted by name and descriptor
+	 */
+	private MethodData[] getMethodIndex() {
+		MethodData[] index = this.methodIndex;
+		if(index == null || index.length != this.methods.size()) {
+			index = this.methods.values().toArray(new MethodData[0]);
+			Arrays.sort(index, METHOD_ORDER);
+			this.methodIndex = index;
+		}
+		return index;
+	}
+
+	/**
+	 * Finds the position of the first method in the index that is not lower than the
+	 * given name and descriptor prefix. Since the index is sorted by descriptor within
+	 * each name, all the methods matching the prefix come right after it.
+	 * @param index the sorted method index
+	 * @param methodName the method name
+	 * @param descriptorPrefix the method descriptor, which may be partial
+	 * @return the position of the first candidate
+	 */
+	static int lowerBound(MethodData[] index, String methodName, String descriptorPrefix) {
+		int low = 0, high = index.length;
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			MethodSignature signature = index[middle].signature;
+			int cmp = signature.name.compareTo(methodName);
+			if(cmp == 0)
+				cmp = signature.descriptor.compareTo(descriptorPrefix);
+			if(cmp < 0) low = middle + 1;
+			else high = middle;
+		}
+		return low;
+	}
+
+	/**
+	 * Checks whether a method matches the given name and descriptor prefix.
+	 * @param data the method
+	 * @param methodName the method name
+	 * @param descriptorPrefix the method descriptor, which may be partial
+	 * @return whether it matches
+	 */
+	static boolean matches(MethodData data, String methodName, String descriptorPrefix) {
+		return data.signature.name.equals(methodName) && data.signature.descriptor.startsWith(descriptorPrefix);
 	}
 
 	/**
@@ -120,12 +232,59 @@ public class ClassData {
 	 * @throws MappingNotFoundException if the mapping wasn't found
 	 */
 	public FieldData mapField(String fieldName) {
-		FieldData data = this.fields.get(fieldName);
+		FieldData data = this.findField(fieldName);
 		if(data == null)
 			throw new MappingNotFoundException("field", String.format("%s.%s", this.name, fieldName));
 		else return data;
 	}
 
+	/**
+	 * Looks up the {@link FieldData} from its name, without throwing if it's missing.
+	 * @param fieldName the field name
+	 * @return the requested {@link FieldData}, or null if the mapping wasn't found
+	 */
+	public FieldData findField(String fieldName) {
+		return this.fields.get(fieldName);
+	}
+
+	/**
+	 * Checks whether another {@link ClassData} describes the same class with the
+	 * same mappings, members included.
+	 * @param other the other {@link ClassData}
+	 * @return whether the two map everything the same way
+	 */
+	public boolean hasSameMappings(ClassData other) {
+		if(this == other)
+			return true;
+		if(!this.name.equals(other.name) || !Objects.equals(this.nameMapped, other.nameMapped))
+			return false;
+		Map<MethodSignature, MethodData> otherMethods = other.getMethods();
+		Map<String, FieldData> otherFields = other.getFields();
+		if(this.getMethods().size() != otherMethods.size() || this.getFields().size() != otherFields.size())
+			return false;
+		for(MethodData method : this.getMethods().values()) {
+			MethodData otherMethod = otherMethods.get(method.signature);
+			if(otherMethod == null || !Objects.equals(method.nameMapped, otherMethod.nameMapped))
+				return false;
+		}
+		for(FieldData field : this.getFields().values()) {
+			FieldData otherField = otherFields.get(field.name);
+			if(otherField == null || !Objects.equals(field.nameMapped, otherField.nameMapped)
+				|| !Objects.equals(field.descriptor, otherField.descriptor))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Builds an immutable, compact copy of this class, which stores its members
+	 * in sorted arrays rather than in {@link Map}s.
+	 * @return the frozen {@link ClassData}
+	 */
+	public ClassData freeze() {
+		return new FrozenClassData(this);
+	}
+
 	/**
 	 * Gets the underlying {@link Map} for {@link MethodData}.
 	 * @return a {@link Map} tying each {@link MethodSignature} to its {@link MethodData}
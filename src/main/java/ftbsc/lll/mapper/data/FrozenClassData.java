@@ -0,0 +1,309 @@
+package ftbsc.lll.mapper.data;
+
+import java.util.*;
+
+/**
+ * An immutable {@link ClassData} which keeps its members in sorted arrays rather
+ * than in {@link Map}s, trading hash nodes for binary searches. The searches run on
+ * parallel {@link String} arrays of the keys, and successful lookups return the
+ * {@link MethodData} and {@link FieldData} built once, when freezing: they don't
+ * allocate anything.
+ */
+public class FrozenClassData extends ClassData {
+	/**
+	 * The plain names of the methods, sorted by name and then by descriptor.
+	 */
+	private final String[] methodNames;
+
+	/**
+	 * The plain descriptors of the methods, parallel to {@link #methodNames}.
+	 */
+	private final String[] methodDescriptors;
+
+	/**
+	 * The methods, parallel to {@link #methodNames}.
+	 */
+	private final MethodData[] methodArray;
+
+	/**
+	 * The plain names of the fields, sorted.
+	 */
+	private final String[] fieldNames;
+
+	/**
+	 * The fields, parallel to {@link #fieldNames}.
+	 */
+	private final FieldData[] fieldArray;
+
+	/**
+	 * The read-only {@link Map} view of the methods.
+	 */
+	private final Map<MethodSignature, MethodData> methodView;
+
+	/**
+	 * The read-only {@link Map} view of the fields.
+	 */
+	private final Map<String, FieldData> fieldView;
+
+	/**
+	 * Builds a frozen copy of the given {@link ClassData}.
+	 * @param data the {@link ClassData} to copy
+	 */
+	FrozenClassData(ClassData data) {
+		super(data.name, data.nameMapped, Collections.emptyMap(), Collections.emptyMap());
+		this.methodArray = new MethodData[data.getMethods().size()];
+		int i = 0;
+		for(MethodData method : data.getMethods().values())
+			this.methodArray[i++] = new MethodData(this, method.signature.name, method.nameMapped, method.signature.descriptor);
+		Arrays.sort(this.methodArray, METHOD_ORDER);
+		this.methodNames = new String[this.methodArray.length];
+		this.methodDescriptors = new String[this.methodArray.length];
+		for(i = 0; i < this.methodArray.length; i++) {
+			this.methodNames[i] = this.methodArray[i].signature.name;
+			this.methodDescriptors[i] = this.methodArray[i].signature.descriptor;
+		}
+
+		this.fieldArray = new FieldData[data.getFields().size()];
+		i = 0;
+		for(FieldData field : data.getFields().values())
+			this.fieldArray[i++] = new FieldData(this, field.name, field.nameMapped, field.descriptor);
+		Arrays.sort(this.fieldArray, Comparator.comparing(f -> f.name));
+		this.fieldNames = new String[this.fieldArray.length];
+		for(i = 0; i < this.fieldArray.length; i++)
+			this.fieldNames[i] = this.fieldArray[i].name;
+
+		this.methodView = new ArrayView<MethodSignature, MethodData>(this.methodNames.length) {
+			@Override
+			protected MethodSignature keyAt(int index) {
+				return methodArray[index].signature;
+			}
+
+			@Override
+			protected MethodData valueAt(int index) {
+				return methodArray[index];
+			}
+
+			@Override
+			public MethodData get(Object key) {
+				if(!(key instanceof MethodSignature))
+					return null;
+				MethodSignature signature = (MethodSignature) key;
+				int index = lowerBound(signature.name, signature.descriptor);
+				if(index < methodNames.length && methodNames[index].equals(signature.name)
+					&& methodDescriptors[index].equals(signature.descriptor))
+					return methodArray[index];
+				return null;
+			}
+		};
+
+		this.fieldView = new ArrayView<String, FieldData>(this.fieldNames.length) {
+			@Override
+			protected String keyAt(int index) {
+				return fieldNames[index];
+			}
+
+			@Override
+			protected FieldData valueAt(int index) {
+				return fieldArray[index];
+			}
+
+			@Override
+			public FieldData get(Object key) {
+				if(!(key instanceof String))
+					return null;
+				int index = indexOfField((String) key);
+				return index < 0 ? null : fieldArray[index];
+			}
+		};
+	}
+
+	/**
+	 * Always throws, since a {@link FrozenClassData} cannot be modified.
+	 * @param name the method name
+	 * @param nameMapped the mapped method name
+	 * @param descriptor the descriptor of the method
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public void addMethod(String name, String nameMapped, String descriptor) {
+		throw new UnsupportedOperationException("Cannot add methods to a frozen class!");
+	}
+
+	/**
+	 * Always throws, since a {@link FrozenClassData} cannot be modified.
+	 * @param plain the name of the field
+	 * @param mapped the mapped name of the field
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public void addField(String plain, String mapped) {
+		throw new UnsupportedOperationException("Cannot add fields to a frozen class!");
+	}
+
+	/**
+	 * Always throws, since a {@link FrozenClassData} cannot be modified.
+	 * @param plain the name of the field
+	 * @param mapped the mapped name of the field
+	 * @param descriptor the plain type descriptor of the field
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public void addField(String plain, String mapped, String descriptor) {
+		throw new UnsupportedOperationException("Cannot add fields to a frozen class!");
+	}
+
+	@Override
+	public MethodData findMethod(String methodName, String methodDescriptor) {
+		int first = this.lowerBound(methodName, methodDescriptor);
+		int last = first;
+		while(last < this.methodNames.length && this.methodNames[last].equals(methodName)
+			&& this.methodDescriptors[last].startsWith(methodDescriptor))
+			last++;
+		if(last == first)
+			return null;
+		return this.pickMethod(this.methodArray, first, last, methodName, methodDescriptor);
+	}
+
+	@Override
+	public FieldData findField(String fieldName) {
+		int index = this.indexOfField(fieldName);
+		return index < 0 ? null : this.fieldArray[index];
+	}
+
+	/**
+	 * @return this, as it's already frozen
+	 */
+	@Override
+	public ClassData freeze() {
+		return this;
+	}
+
+	/**
+	 * Gets a read-only {@link Map} view of the methods.
+	 * @return a {@link Map} tying each {@link MethodSignature} to its {@link MethodData}
+	 */
+	@Override
+	public Map<MethodSignature, MethodData> getMethods() {
+		return this.methodView;
+	}
+
+	/**
+	 * Gets a read-only {@link Map} view of the fields.
+	 * @return a {@link Map} tying each field name to its {@link FieldData}
+	 */
+	@Override
+	public Map<String, FieldData> getFields() {
+		return this.fieldView;
+	}
+
+	/**
+	 * Finds the position of the first method that is not lower than the given name
+	 * and descriptor prefix, through a binary search.
+	 * @param methodName the method name
+	 * @param descriptorPrefix the method descriptor, which may be partial
+	 * @return the position of the first candidate
+	 */
+	private int lowerBound(String methodName, String descriptorPrefix) {
+		int low = 0, high = this.methodNames.length;
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			int cmp = this.methodNames[middle].compareTo(methodName);
+			if(cmp == 0)
+				cmp = this.methodDescriptors[middle].compareTo(descriptorPrefix);
+			if(cmp < 0) low = middle + 1;
+			else high = middle;
+		}
+		return low;
+	}
+
+	/**
+	 * Finds a field through a binary search.
+	 * @param fieldName the field name
+	 * @return the position of the field, or a negative number if it's not there
+	 */
+	private int indexOfField(String fieldName) {
+		int low = 0, high = this.fieldNames.length - 1;
+		while(low <= high) {
+			int middle = (low + high) >>> 1;
+			int cmp = this.fieldNames[middle].compareTo(fieldName);
+			if(cmp < 0) low = middle + 1;
+			else if(cmp > 0) high = middle - 1;
+			else return middle;
+		}
+		return -1;
+	}
+
+	/**
+	 * A read-only {@link Map} view over sorted, parallel arrays.
+	 * @param <K> the type of the keys
+	 * @param <V> the type of the values
+	 */
+	private abstract static class ArrayView<K, V> extends AbstractMap<K, V> {
+		/**
+		 * The number of entries.
+		 */
+		private final int size;
+
+		/**
+		 * The constructor.
+		 * @param size the number of entries
+		 */
+		ArrayView(int size) {
+			this.size = size;
+		}
+
+		/**
+		 * Gets the key at the given position.
+		 * @param index the position
+		 * @return the key
+		 */
+		protected abstract K keyAt(int index);
+
+		/**
+		 * Gets the value at the given position.
+		 * @param index the position
+		 * @return the value
+		 */
+		protected abstract V valueAt(int index);
+
+		@Override
+		public boolean containsKey(Object key) {
+			return this.get(key) != null;
+		}
+
+		@Override
+		public int size() {
+			return this.size;
+		}
+
+		@Override
+		public Set<Entry<K, V>> entrySet() {
+			return new AbstractSet<Entry<K, V>>() {
+				@Override
+				public Iterator<Entry<K, V>> iterator() {
+					return new Iterator<Entry<K, V>>() {
+						private int next = 0;
+
+						@Override
+						public boolean hasNext() {
+							return this.next < size;
+						}
+
+						@Override
+						public Entry<K, V> next() {
+							if(!this.hasNext())
+								throw new NoSuchElementException();
+							int index = this.next++;
+							return new SimpleImmutableEntry<>(keyAt(index), valueAt(index));
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return size;
+				}
+			};
+		}
+	}
+}
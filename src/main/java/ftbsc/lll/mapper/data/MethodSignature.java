@@ -46,6 +46,6 @@ public class MethodSignature {
 	 */
 	@Override
 	public int hashCode() {
-		return Objects.hash(name, descriptor);
+		return 31 * Objects.hashCode(this.name) + Objects.hashCode(this.descriptor);
 	}
 }
@@ -2,62 +2,111 @@ package ftbsc.lll.mapper.impl;
 
 import com.google.auto.service.AutoService;
 import ftbsc.lll.exceptions.MalformedMappingsException;
+import ftbsc.lll.exceptions.MappingChainException;
 import ftbsc.lll.mapper.IMappingFormat;
+import ftbsc.lll.mapper.IStreamingMappingFormat;
 import ftbsc.lll.mapper.MapperProvider;
 import ftbsc.lll.mapper.utils.Mapper;
-import ftbsc.lll.mapper.utils.MappingUtils;
-import ftbsc.lll.mapper.data.ClassData;
+import ftbsc.lll.mapper.utils.MapperComposer;
+import ftbsc.lll.mapper.utils.StringPool;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Special mapper type that actually resolves to an ordered
  * sequence of mappers applied one after the other.
  */
 @AutoService(IMappingFormat.class)
-public class MultiMapper implements IMappingFormat {
-	@Override
-	public boolean claim(List<String> lines) {
-		return lines.get(0).equals("lll multimapper");
-	}
+public class MultiMapper implements IStreamingMappingFormat {
+	/**
+	 * The {@link Executor} the chained mappings are fetched and parsed on.
+	 */
+	private final Executor executor;
 
-	@Override
-	public Mapper getMapper(List<String> lines, boolean ignoreErrors) throws MalformedMappingsException {
-		Mapper result = new Mapper();
-		List<Mapper> mapperList = new ArrayList<>();
+	/**
+	 * The default constructor, which loads the chained mappings on the
+	 * common {@link ForkJoinPool}.
+	 */
+	public MultiMapper() {
+		this(ForkJoinPool.commonPool());
+	}
 
-		for(int i = 1; i < lines.size(); i++) {
-			List<String> data = MapperProvider.fetchFromLocalOrRemote(lines.get(i));
-			IMappingFormat format = MapperProvider.getMapper(data);
-			mapperList.add(format.getMapper(data, ignoreErrors));
-		}
+	/**
+	 * Constructs a new {@link MultiMapper} which loads the chained mappings
+	 * on the given {@link Executor}.
+	 * @param executor the {@link Executor} to use
+	 */
+	public MultiMapper(Executor executor) {
+		this.executor = executor;
+	}
 
-		mapperList.get(0).getRawMappings().forEach((name, data) -> {
-			ClassData finalData = data;
-			for(int i = 1; i < mapperList.size(); i++)
-				finalData = mapperList.get(i).getClassData(finalData.nameMapped);
+	@Override
+	public boolean claim(String header) {
+		return header.equals("lll multimapper");
+	}
 
-			ClassData sumData = new ClassData(data.name, finalData.nameMapped);
+	/**
+	 * Lists the chained mappings.
+	 * @param lines the lines of the file, header included
+	 * @return the locations of the chained mappings, in order
+	 */
+	@Override
+	public List<String> getDependencies(List<String> lines) {
+		return new ArrayList<>(lines.subList(Math.min(1, lines.size()), lines.size()));
+	}
 
-			data.getMethods().forEach((signature, methodData) -> {
-				for(int i = 1; i < mapperList.size(); i++) {
-					Mapper mapper = mapperList.get(i);
-					methodData = mapper.getMethodData(methodData.parentClass.nameMapped, methodData.nameMapped,
-						MappingUtils.mapMethodDescriptor(methodData.signature.descriptor, mapper, false));
-				}
-				sumData.addMethod(signature.name, methodData.nameMapped, signature.descriptor);
-			});
+	/**
+	 * Fetches and parses all the chained mappings concurrently, then composes
+	 * them in the order they were declared into a single flattened {@link Mapper}.
+	 * The same {@link StringPool} is shared by all the chained mappings.
+	 * @param lines an {@link Iterator} over the lines to read, header included
+	 * @param ignoreErrors try to ignore errors and keep going
+	 * @param stringPool the {@link StringPool} to canonicalise strings with
+	 * @return the {@link Mapper}
+	 * @throws MalformedMappingsException if an error is encountered and ignoreErrors is false
+	 * @throws MappingChainException if any of the chained mappings could not be loaded
+	 */
+	@Override
+	public Mapper getMapper(Iterator<String> lines, boolean ignoreErrors, StringPool stringPool) throws MalformedMappingsException {
+		return MapperComposer.compose(this.loadChain(lines, ignoreErrors, stringPool));
+	}
 
-			data.getFields().forEach((fieldName, fieldData) -> {
-				for(int i = 1; i < mapperList.size(); i++)
-					fieldData = mapperList.get(i).getFieldData(fieldData.parentClass.nameMapped, fieldData.nameMapped);
-				sumData.addField(fieldName, fieldData.nameMapped, fieldData.descriptor);
-			});
+	/**
+	 * Loads the chained mappings on the {@link #executor}, waiting for all of them
+	 * to be done before reporting any errors.
+	 * @param lines an {@link Iterator} over the lines to read, header included
+	 * @param ignoreErrors try to ignore errors and keep going
+	 * @param stringPool the {@link StringPool} to canonicalise strings with
+	 * @return the loaded {@link Mapper}s, in the order they were declared
+	 * @throws MappingChainException if any of the chained mappings could not be loaded
+	 */
+	private List<Mapper> loadChain(Iterator<String> lines, boolean ignoreErrors, StringPool stringPool) throws MappingChainException {
+		List<String> locations = new ArrayList<>();
+		List<CompletableFuture<Mapper>> stages = new ArrayList<>();
+		if(lines.hasNext())
+			lines.next(); //skip header
+		while(lines.hasNext()) {
+			String location = lines.next();
+			locations.add(location);
+			stages.add(CompletableFuture.supplyAsync(() -> MapperProvider.loadMapper(location, ignoreErrors, stringPool), this.executor));
+		}
 
-			result.getRawMappings().put(sumData.name, sumData);
-		});
+		List<Mapper> mapperList = new ArrayList<>();
+		Map<String, Throwable> failures = new LinkedHashMap<>();
+		for(int i = 0; i < stages.size(); i++) {
+			try {
+				mapperList.add(stages.get(i).join());
+			} catch(CompletionException e) {
+				failures.put(locations.get(i), e.getCause());
+			}
+		}
 
-		return result;
+		if(!failures.isEmpty())
+			throw new MappingChainException(failures, stages.size());
+		return mapperList;
 	}
 }
@@ -3,20 +3,29 @@ package ftbsc.lll.mapper.impl;
 import com.google.auto.service.AutoService;
 import ftbsc.lll.exceptions.MalformedMappingsException;
 import ftbsc.lll.mapper.IMappingFormat;
+import ftbsc.lll.mapper.IStreamingMappingFormat;
+import ftbsc.lll.mapper.IWritableMappingFormat;
+import ftbsc.lll.mapper.utils.DescriptorCache;
 import ftbsc.lll.mapper.utils.Mapper;
+import ftbsc.lll.mapper.utils.MappingUtils;
+import ftbsc.lll.mapper.utils.StringPool;
 import ftbsc.lll.mapper.data.ClassData;
+import ftbsc.lll.mapper.data.FieldData;
+import ftbsc.lll.mapper.data.MethodData;
 
-import java.util.List;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Iterator;
 
 /**
  * A {@link IMappingFormat} capable of parsing SRG mappings.
  */
 @AutoService(IMappingFormat.class)
-public class SRGMapper implements IMappingFormat {
+public class SRGMapper implements IStreamingMappingFormat, IWritableMappingFormat {
 
 	@Override
-	public boolean claim(List<String> lines) {
-		String[] firstLineTokens = lines.get(0).trim().split(" ");
+	public boolean claim(String header) {
+		String[] firstLineTokens = header.trim().split(" ");
 		return firstLineTokens.length <= 5 &&
 			(firstLineTokens[0].equals("CL:")
 				|| firstLineTokens[0].equals("MD:")
@@ -26,33 +35,36 @@ public class SRGMapper implements IMappingFormat {
 	/**
 	 * Builds the two mappers, and returns one of the two depending on the flag.
 	 * Since the SRG format contains descriptor mappings, it's possible to process
-	 * this right away.
-	 * @param lines the lines to read
+	 * this right away. The two are paired, so inverting the result is free.
+	 * @param lines an {@link Iterator} over the lines to read
 	 * @param ignoreErrors try to ignore errors and keep going
 	 * @param inverted whether it should return the inverted one
+	 * @param stringPool the {@link StringPool} to canonicalise strings with
 	 * @return the {@link Mapper}, inverted depending on the flag
 	 * @throws MalformedMappingsException if an error is encountered and ignoreErrors is false
 	 */
-	protected Mapper buildMapper(List<String> lines, boolean ignoreErrors, boolean inverted) throws MalformedMappingsException {
+	protected Mapper buildMapper(Iterator<String> lines, boolean ignoreErrors, boolean inverted,
+															 StringPool stringPool) throws MalformedMappingsException {
 		Mapper mapper = new Mapper();
 		Mapper invertedMapper = new Mapper();
-		for(int i = 0; i < lines.size(); i++) {
-			String[] tokens = lines.get(i).trim().split(" ");
+		for(int i = 0; lines.hasNext(); i++) {
+			String[] tokens = lines.next().trim().split(" ");
 			switch(tokens[0]) {
 				case "CL:":
 					if(tokens.length != 3)
 						break;
-					this.registerClass(mapper, invertedMapper, tokens[1], tokens[2]);
+					this.registerClass(mapper, invertedMapper, stringPool.intern(tokens[1]), stringPool.intern(tokens[2]));
 					continue;
 				case "MD:":
 				case "FD:":
-					if(this.processMemberTokens(mapper, invertedMapper, tokens))
+					if(this.processMemberTokens(mapper, invertedMapper, tokens, stringPool))
 						continue;
 					break;
 			}
 			if(!ignoreErrors)
 				throw new MalformedMappingsException(i, "wrong number of space-separated tokens");
 		}
+		Mapper.pair(mapper, invertedMapper);
 		return inverted ? invertedMapper : mapper;
 	}
 
@@ -61,9 +73,10 @@ public class SRGMapper implements IMappingFormat {
 	 * @param mapper the {@link Mapper} with normal mappings
 	 * @param invertedMapper the {@link Mapper} with inverted mappings
 	 * @param tokens the tokens
+	 * @param stringPool the {@link StringPool} to canonicalise strings with
 	 * @return whether it was a valid mapping
 	 */
-	private boolean processMemberTokens(Mapper mapper, Mapper invertedMapper, String[] tokens) {
+	private boolean processMemberTokens(Mapper mapper, Mapper invertedMapper, String[] tokens, StringPool stringPool) {
 		boolean field;
 		if(tokens[0].equals("MD:")) {
 			if(tokens.length != 5)
@@ -82,8 +95,9 @@ public class SRGMapper implements IMappingFormat {
 		split = tokens[obfPosition].split("/");
 		String memberNameObf = split[split.length - 1];
 		String parentObf = tokens[obfPosition].substring(0, tokens[obfPosition].length() - split[split.length - 1].length() - 1);
-		this.registerMember(mapper, invertedMapper, parent, parentObf, memberName, memberNameObf,
-			field ? null : tokens[2], field ? null : tokens[4]);
+		this.registerMember(mapper, invertedMapper, stringPool.intern(parent), stringPool.intern(parentObf),
+			stringPool.intern(memberName), stringPool.intern(memberNameObf),
+			field ? null : stringPool.intern(tokens[2]), field ? null : stringPool.intern(tokens[4]));
 		return true;
 	}
 
@@ -116,8 +130,8 @@ public class SRGMapper implements IMappingFormat {
 															String parentMapped, String name, String nameMapped,
 															String descriptor, String descriptorMapped) {
 		this.registerClass(mapper, invertedMapper, parent, parentMapped);
-		ClassData data = mapper.getClassData(parent);
-		ClassData dataReverse = invertedMapper.getClassData(data.nameMapped);
+		ClassData data = mapper.getRawMappings().get(parent);
+		ClassData dataReverse = invertedMapper.getRawMappings().get(data.nameMapped);
 		if(descriptor == null || descriptorMapped == null) {
 			//field
 			data.addField(name, nameMapped);
@@ -130,12 +144,27 @@ public class SRGMapper implements IMappingFormat {
 	}
 
 	@Override
-	public Mapper getMapper(List<String> lines, boolean ignoreErrors) throws MalformedMappingsException {
-		return this.buildMapper(lines, ignoreErrors, false);
+	public Mapper getMapper(Iterator<String> lines, boolean ignoreErrors, StringPool stringPool) throws MalformedMappingsException {
+		return this.buildMapper(lines, ignoreErrors, false, stringPool);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * Each class is followed by its own fields and methods, rather than grouping
+	 * all lines of the same kind together; mapped descriptors are computed through
+	 * the {@link DescriptorCache} of the {@link Mapper}.
+	 */
 	@Override
-	public Mapper getInvertedMapper(List<String> lines, boolean ignoreErrors) {
-		return this.buildMapper(lines, ignoreErrors, true);
+	public void write(Mapper mapper, Writer writer) throws IOException {
+		DescriptorCache descriptors = mapper.getDescriptorCache();
+		for(String name : MappingUtils.getSortedClassNames(mapper)) {
+			ClassData data = mapper.getRawMappings().get(name);
+			writer.write("CL: " + data.name + " " + data.nameMapped + "\n");
+			for(FieldData field : MappingUtils.getSortedFields(data))
+				writer.write("FD: " + data.name + "/" + field.name + " " + data.nameMapped + "/" + field.nameMapped + "\n");
+			for(MethodData method : MappingUtils.getSortedMethods(data))
+				writer.write("MD: " + data.name + "/" + method.signature.name + " " + method.signature.descriptor + " "
+					+ data.nameMapped + "/" + method.nameMapped + " " + descriptors.map(method.signature.descriptor) + "\n");
+		}
 	}
 }
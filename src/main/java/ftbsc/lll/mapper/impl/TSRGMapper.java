@@ -2,11 +2,19 @@ package ftbsc.lll.mapper.impl;
 
 import com.google.auto.service.AutoService;
 import ftbsc.lll.exceptions.MalformedMappingsException;
+import ftbsc.lll.mapper.IBlockMappingFormat;
 import ftbsc.lll.mapper.IMappingFormat;
+import ftbsc.lll.mapper.IWritableMappingFormat;
 import ftbsc.lll.mapper.utils.Mapper;
+import ftbsc.lll.mapper.utils.MappingUtils;
+import ftbsc.lll.mapper.utils.StringPool;
 import ftbsc.lll.mapper.data.ClassData;
+import ftbsc.lll.mapper.data.FieldData;
+import ftbsc.lll.mapper.data.MethodData;
 
-import java.util.List;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Iterator;
 import java.util.regex.Pattern;
 
 /**
@@ -15,36 +23,62 @@ import java.util.regex.Pattern;
  */
 
 @AutoService(IMappingFormat.class)
-public class TSRGMapper implements IMappingFormat {
+public class TSRGMapper implements IBlockMappingFormat, IWritableMappingFormat {
+	/**
+	 * The {@link Pattern} the header of a TSRG file matches.
+	 */
+	private static final Pattern HEADER = Pattern.compile("tsrg2 [a-zA-Z]* [a-zA-Z]*");
 
 	@Override
-	public boolean claim(List<String> lines) {
-		return Pattern.compile("tsrg2 [a-zA-Z]* [a-zA-Z]*")
-			.matcher(lines.get(0)).matches();
+	public boolean claim(String header) {
+		return HEADER.matcher(header).matches();
 	}
 
 	@Override
-	public Mapper getMapper(List<String> lines, boolean ignoreErrors) throws MalformedMappingsException {
-		Mapper result = new Mapper();
-		String currentClass = "";
-		for(int i = 1; i < lines.size(); i++) { //start from 1 to skip header
-			String currentLine = lines.get(i);
+	public String getClassName(String line) {
+		String[] tokens = line.trim().split(" ");
+		return tokens.length == 2 ? tokens[0] : null;
+	}
+
+	@Override
+	public void parseBlocks(Mapper result, Iterator<String> lines, int lineNumber, boolean ignoreErrors,
+													StringPool stringPool) throws MalformedMappingsException {
+		ClassData currentClass = null;
+		for(int i = lineNumber; lines.hasNext(); i++) {
+			String currentLine = lines.next();
 			boolean isMember = currentLine.startsWith("\t") || currentLine.startsWith(" ");
 			String[] tokens = currentLine.trim().split(" ");
 			if(isMember) {
+				if(currentClass == null) {
+					if(ignoreErrors) continue;
+					else throw new MalformedMappingsException(i, "class member without parent class");
+				}
 				if(tokens.length == 2) //field
-					result.getClassData(currentClass).addField(tokens[0], tokens[1]);
+					currentClass.addField(stringPool.intern(tokens[0]), stringPool.intern(tokens[1]));
 				else if(tokens.length == 3)//method
-					result.getClassData(currentClass).addMethod(tokens[0], tokens[2], tokens[1]); //add child
+					currentClass.addMethod(stringPool.intern(tokens[0]),
+						stringPool.intern(tokens[2]), stringPool.intern(tokens[1])); //add child
 				else if(!ignoreErrors) throw new MalformedMappingsException(i, "wrong number of space-separated tokens");
 			} else {
 				if(tokens.length == 2) {
-					ClassData s = new ClassData(tokens[0], tokens[1]);
-					currentClass = s.name;
+					ClassData s = new ClassData(stringPool.intern(tokens[0]), stringPool.intern(tokens[1]));
+					currentClass = s;
 					result.getRawMappings().put(s.name, s);
 				} else if(!ignoreErrors) throw new MalformedMappingsException(i, "wrong number of space-separated tokens");
 			}
 		}
-		return result;
+	}
+
+	@Override
+	public void write(Mapper mapper, Writer writer) throws IOException {
+		writer.write("tsrg2 left right\n");
+		for(String name : MappingUtils.getSortedClassNames(mapper)) {
+			ClassData data = mapper.getRawMappings().get(name);
+			writer.write(data.name + " " + data.nameMapped + "\n");
+			for(FieldData field : MappingUtils.getSortedFields(data))
+				writer.write("\t" + field.name + " " + field.nameMapped + "\n");
+			for(MethodData method : MappingUtils.getSortedMethods(data))
+				writer.write("\t" + method.signature.name + " " + method.signature.descriptor + " " + method.nameMapped + "\n");
+		}
 	}
 }
@@ -2,59 +2,84 @@ package ftbsc.lll.mapper.impl;
 
 import com.google.auto.service.AutoService;
 import ftbsc.lll.exceptions.MalformedMappingsException;
+import ftbsc.lll.mapper.IBlockMappingFormat;
 import ftbsc.lll.mapper.IMappingFormat;
+import ftbsc.lll.mapper.IWritableMappingFormat;
 import ftbsc.lll.mapper.utils.Mapper;
+import ftbsc.lll.mapper.utils.MappingUtils;
+import ftbsc.lll.mapper.utils.NamespacedMappings;
+import ftbsc.lll.mapper.utils.StringPool;
 import ftbsc.lll.mapper.data.ClassData;
+import ftbsc.lll.mapper.data.FieldData;
+import ftbsc.lll.mapper.data.MethodData;
 
-import java.util.List;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Iterator;
 import java.util.regex.Pattern;
 
 /**
  * A {@link IMappingFormat} capable of parsing TinyV2 mappings.
+ * Files may declare any number of namespaces, but only the first
+ * two are considered: use {@link NamespacedMappings} to work with
+ * any pair of them. Mappings can only be written in it if every
+ * field has a descriptor.
  */
 @AutoService(IMappingFormat.class)
-public class TinyV2Mapper implements IMappingFormat {
+public class TinyV2Mapper implements IBlockMappingFormat, IWritableMappingFormat {
+	/**
+	 * The {@link Pattern} the header of a TinyV2 file matches.
+	 */
+	private static final Pattern HEADER = Pattern.compile("tiny\t2\t[0-9]+(\t[a-zA-Z_]*){2,}");
 
 	@Override
-	public boolean claim(List<String> lines) {
-		return Pattern.compile("tiny\t2\t[0-9]\t[a-zA-Z]*\t[a-zA-Z]*")
-			.matcher(lines.get(0)).matches();
+	public boolean claim(String header) {
+		return HEADER.matcher(header).matches();
 	}
 
 	@Override
-	public Mapper getMapper(List<String> lines, boolean ignoreErrors) throws MalformedMappingsException {
-		Mapper result = new Mapper();
-		String currentClass = "";
-		for(int i = 1; i < lines.size(); i++) {
-			String currentLine = lines.get(i);
+	public String getClassName(String line) {
+		String[] tokens = line.trim().split("\t");
+		return tokens.length >= 3 && tokens[0].charAt(0) == 'c' ? tokens[1] : null;
+	}
+
+	@Override
+	public void parseBlocks(Mapper result, Iterator<String> lines, int lineNumber, boolean ignoreErrors,
+													StringPool stringPool) throws MalformedMappingsException {
+		ClassData currentClass = null;
+		for(int i = lineNumber; lines.hasNext(); i++) {
+			String currentLine = lines.next();
 			String[] tokens = currentLine.trim().split("\t");
 			int tabCount = currentLine.indexOf(tokens[0]); //get number of leading tabs
 			switch(tabCount) {
 				case 0: //classes
-					if(tokens.length == 3) {
+					if(tokens.length >= 3) {
 						if(tokens[0].charAt(0) == 'c') {
-							result.getRawMappings().put(tokens[1], new ClassData(tokens[1], tokens[2]));
-							currentClass = tokens[1];
+							ClassData data = new ClassData(stringPool.intern(tokens[1]), stringPool.intern(tokens[2]));
+							result.getRawMappings().put(data.name, data);
+							currentClass = data;
 						} else if(!ignoreErrors)
 							throw new MalformedMappingsException(i, "root-level element must be class");
 						continue;
 					}
 					break;
 				case 1: //class members
-					if(currentClass.isEmpty()) {
+					if(currentClass == null) {
 						if(ignoreErrors) continue;
 						else throw new MalformedMappingsException(i, "class member without parent class");
 					}
 					switch(tokens[0].charAt(0)) {
 						case 'm': //methods
-							if(tokens.length == 4)
+							if(tokens.length < 4)
 								break;
-							result.getClassData(currentClass).addMethod(tokens[2], tokens[3], tokens[1]);
+							currentClass.addMethod(stringPool.intern(tokens[2]),
+								stringPool.intern(tokens[3]), stringPool.intern(tokens[1]));
 							continue;
 						case 'f': //fields
-							if(tokens.length == 4)
+							if(tokens.length < 4)
 								break;
-							result.getClassData(currentClass).addField(tokens[2], tokens[3], tokens[1]);
+							currentClass.addField(stringPool.intern(tokens[2]),
+								stringPool.intern(tokens[3]), stringPool.intern(tokens[1]));
 							continue;
 					}
 					break;
@@ -64,6 +89,31 @@ public class TinyV2Mapper implements IMappingFormat {
 			if(!ignoreErrors)
 				throw new MalformedMappingsException(i, "wrong number of tab-separated tokens");
 		}
-		return result;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * TinyV2 requires every field to have a descriptor, so mappings read from formats
+	 * that don't record them (such as TSRG) can't be written in it. This is checked
+	 * before anything is written.
+	 * @throws IllegalArgumentException if a field has no descriptor
+	 */
+	@Override
+	public void write(Mapper mapper, Writer writer) throws IOException {
+		for(ClassData data : mapper.getRawMappings().values())
+			for(FieldData field : data.getFields().values())
+				if(field.descriptor == null || field.descriptor.isEmpty())
+					throw new IllegalArgumentException(String.format(
+						"Field %s.%s has no descriptor, which TinyV2 requires!", data.name, field.name));
+
+		writer.write("tiny\t2\t0\tleft\tright\n");
+		for(String name : MappingUtils.getSortedClassNames(mapper)) {
+			ClassData data = mapper.getRawMappings().get(name);
+			writer.write("c\t" + data.name + "\t" + data.nameMapped + "\n");
+			for(FieldData field : MappingUtils.getSortedFields(data))
+				writer.write("\tf\t" + field.descriptor + "\t" + field.name + "\t" + field.nameMapped + "\n");
+			for(MethodData method : MappingUtils.getSortedMethods(data))
+				writer.write("\tm\t" + method.signature.descriptor + "\t" + method.signature.name + "\t" + method.nameMapped + "\n");
+		}
 	}
 }
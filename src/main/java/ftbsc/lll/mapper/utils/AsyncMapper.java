@@ -0,0 +1,490 @@
+package ftbsc.lll.mapper.utils;
+
+import ftbsc.lll.exceptions.InvalidResourceException;
+import ftbsc.lll.exceptions.MalformedMappingsException;
+import ftbsc.lll.exceptions.MappingNotFoundException;
+import ftbsc.lll.mapper.IBlockMappingFormat;
+import ftbsc.lll.mapper.IMappingFormat;
+import ftbsc.lll.mapper.Instrumentation;
+import ftbsc.lll.mapper.MapperProvider;
+import ftbsc.lll.mapper.data.ClassData;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * A {@link Mapper} which is populated in the background, on a given {@link Executor}.
+ * Fetching and decoding the resource happen on one task, the reader, while the chunks
+ * it's split into are parsed on others, so the three overlap. Classes become available
+ * as soon as the chunk declaring them is done, in the order they appear in the file: a
+ * lookup for a class that's already there succeeds right away, while a lookup for one
+ * that isn't blocks until it shows up, or until the whole file has been read.
+ * <p>
+ * Progress never depends on a free thread of the {@link Executor}: the reader parses
+ * any chunk no other thread has picked up yet, and publishes chunks itself, and a lookup
+ * which has to wait before the reader has even started runs it on the calling thread.
+ * Lookups may therefore block on the {@link Executor} itself without deadlocking it.
+ * This does not extend to the futures handed out by {@link #awaitClass(String)}, which
+ * should not be waited on from the {@link Executor}.
+ * <p>
+ * Only {@link IBlockMappingFormat}s can be split into chunks: other formats are
+ * still parsed in the background, but their classes only appear all at once, at the end.
+ */
+public class AsyncMapper extends Mapper {
+	/**
+	 * The minimum number of lines in each chunk. Smaller chunks make classes
+	 * available sooner, at the cost of more tasks.
+	 */
+	public static final int CHUNK_SIZE = 1024;
+
+	/**
+	 * The maximum number of chunks waiting to be published. Past this, the reader parses
+	 * chunks itself, rather than buffering more of them.
+	 */
+	private static final int MAX_PENDING_CHUNKS = 16;
+
+	/**
+	 * The classes that have been parsed so far.
+	 */
+	private final Map<String, ClassData> classes = new ConcurrentHashMap<>();
+
+	/**
+	 * The futures handed out for classes that had not been parsed yet.
+	 */
+	private final Map<String, CompletableFuture<ClassData>> waiters = new ConcurrentHashMap<>();
+
+	/**
+	 * Completed once every class has been parsed, or as soon as something fails.
+	 */
+	private final CompletableFuture<Mapper> completion = new CompletableFuture<>();
+
+	/**
+	 * The chunks that have not been published yet, in the order they appear in the file.
+	 * It also serves as the lock under which chunks are published.
+	 */
+	private final Deque<Chunk> pendingChunks = new ArrayDeque<>();
+
+	/**
+	 * Whether the reader has been started.
+	 */
+	private final AtomicBoolean started = new AtomicBoolean();
+
+	/**
+	 * The reader, which fetches the resource and splits it into chunks.
+	 */
+	private Runnable reader;
+
+	/**
+	 * The {@link Executor} to run on.
+	 */
+	private final Executor executor;
+
+	/**
+	 * The constructor.
+	 * @param executor the {@link Executor} to run on
+	 */
+	private AsyncMapper(Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Starts loading the resource at the given location on the given {@link Executor},
+	 * picking the format from its first line. This returns right away. The {@link Executor}
+	 * should have more than one thread for parsing to overlap with reading: with a single
+	 * one, the reader parses every chunk itself.
+	 * @param location either a URL or a local path
+	 * @param ignoreErrors try to ignore errors and keep going
+	 * @param executor the {@link Executor} to fetch and parse on
+	 * @return the {@link AsyncMapper}, which fills up as the resource is parsed
+	 */
+	public static AsyncMapper load(String location, boolean ignoreErrors, Executor executor) {
+		AsyncMapper mapper = new AsyncMapper(executor);
+		mapper.reader = () -> mapper.read(location, ignoreErrors);
+		executor.execute(mapper::start);
+		return mapper;
+	}
+
+	/**
+	 * Runs the reader on the calling thread, unless it has already been started.
+	 * Whatever goes wrong is reported through {@link #whenLoaded()}.
+	 */
+	private void start() {
+		if(!this.started.compareAndSet(false, true))
+			return;
+		try {
+			this.reader.run();
+		} catch(RuntimeException e) {
+			this.finish(e);
+		} catch(Error e) {
+			this.finish(e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads the resource, splitting it into chunks to be parsed.
+	 * @param location either a URL or a local path
+	 * @param ignoreErrors try to ignore errors and keep going
+	 * @throws InvalidResourceException if provided an invalid resource
+	 */
+	private void read(String location, boolean ignoreErrors) {
+		long startTime = System.nanoTime();
+		StringPool stringPool = new StringPool();
+		try(BufferedReader reader = MapperProvider.openFromLocalOrRemote(location)) {
+			String header = reader.readLine();
+			if(header == null)
+				throw new InvalidResourceException(location);
+			IMappingFormat format = MapperProvider.getMapper(header);
+			if(!(format instanceof IBlockMappingFormat)) {
+				Iterator<String> lines = reader.lines().iterator();
+				Iterator<String> withHeader = new Iterator<String>() {
+					private boolean headerRead = false;
+
+					@Override
+					public boolean hasNext() {
+						return !this.headerRead || lines.hasNext();
+					}
+
+					@Override
+					public String next() {
+						if(this.headerRead)
+							return lines.next();
+						this.headerRead = true;
+						return header;
+					}
+				};
+				List<Runnable> wakeUps = new ArrayList<>();
+				this.publish(Instrumentation.parse(format, withHeader, ignoreErrors, stringPool), wakeUps);
+				wakeUps.forEach(Runnable::run);
+				this.finish(null);
+				return;
+			}
+
+			IBlockMappingFormat blockFormat = (IBlockMappingFormat) format;
+			List<String> chunk = new ArrayList<>(CHUNK_SIZE);
+			int chunkStart = 1, lineNumber = 1;
+			for(String line; (line = reader.readLine()) != null; lineNumber++) {
+				if(chunk.size() >= CHUNK_SIZE && blockFormat.isClassLine(line)) {
+					if(this.completion.isDone())
+						return; //a chunk failed, no point in going on
+					this.submit(new Chunk(blockFormat, chunk, chunkStart, ignoreErrors, stringPool));
+					chunk = new ArrayList<>(CHUNK_SIZE);
+					chunkStart = lineNumber;
+				}
+				chunk.add(line);
+			}
+			if(!chunk.isEmpty())
+				this.submit(new Chunk(blockFormat, chunk, chunkStart, ignoreErrors, stringPool));
+
+			//parse whatever was not picked up, and wait for the rest
+			List<Chunk> remaining;
+			synchronized(this.pendingChunks) {
+				remaining = new ArrayList<>(this.pendingChunks);
+			}
+			for(Chunk pending : remaining) {
+				if(this.completion.isDone())
+					return;
+				pending.runAndWait();
+			}
+			this.drain();
+			this.finish(null);
+			if(this.isLoaded() && Instrumentation.ENABLED)
+				Instrumentation.report(format, this, System.nanoTime() - startTime, lineNumber, stringPool);
+		} catch(IOException | UncheckedIOException e) {
+			throw new InvalidResourceException(location, e);
+		}
+	}
+
+	/**
+	 * Queues a chunk, and offers it to the {@link Executor}. If too many chunks are
+	 * waiting to be published, the reader parses the oldest ones itself.
+	 * @param chunk the {@link Chunk}
+	 */
+	private void submit(Chunk chunk) {
+		synchronized(this.pendingChunks) {
+			this.pendingChunks.add(chunk);
+		}
+		try {
+			this.executor.execute(() -> {
+				chunk.run();
+				this.drain();
+			});
+		} catch(RejectedExecutionException ignored) {} //the reader will get to it
+
+		while(true) {
+			Chunk oldest;
+			synchronized(this.pendingChunks) {
+				if(this.pendingChunks.size() < MAX_PENDING_CHUNKS)
+					return;
+				oldest = this.pendingChunks.peek();
+			}
+			oldest.runAndWait();
+			this.drain();
+		}
+	}
+
+	/**
+	 * Publishes the parsed chunks at the head of the queue, in order, then wakes up
+	 * whoever was waiting for their classes. The waiters are woken up outside the lock,
+	 * as they may run arbitrary code.
+	 */
+	private void drain() {
+		List<Runnable> wakeUps = new ArrayList<>();
+		synchronized(this.pendingChunks) {
+			while(!this.pendingChunks.isEmpty() && this.pendingChunks.peek().parsed.isDone()) {
+				Chunk chunk = this.pendingChunks.poll();
+				if(chunk.parsed.isCompletedExceptionally()) {
+					this.pendingChunks.clear(); //already reported through finish
+					break;
+				}
+				this.publish(chunk.parsed.join(), wakeUps);
+			}
+		}
+		wakeUps.forEach(Runnable::run);
+	}
+
+	/**
+	 * Makes the classes of a parsed chunk available.
+	 * @param chunk the {@link Mapper} holding the chunk
+	 * @param wakeUps a {@link List} to add the actions waking up whoever was waiting for them to
+	 */
+	private void publish(Mapper chunk, List<Runnable> wakeUps) {
+		chunk.getRawMappings().forEach((name, data) -> {
+			this.classes.put(name, data);
+			CompletableFuture<ClassData> waiter = this.waiters.remove(name);
+			if(waiter != null)
+				wakeUps.add(() -> waiter.complete(data));
+		});
+	}
+
+	/**
+	 * Marks the loading as over, and fails the futures of the classes that never showed up.
+	 * Only the first call has any effect.
+	 * @param error what went wrong, or null if everything was parsed
+	 */
+	private void finish(Throwable error) {
+		boolean first = error == null ? this.completion.complete(this) : this.completion.completeExceptionally(error);
+		if(!first)
+			return;
+		for(String name : new ArrayList<>(this.waiters.keySet())) {
+			CompletableFuture<ClassData> waiter = this.waiters.remove(name);
+			if(waiter != null)
+				this.fail(waiter, name);
+		}
+	}
+
+	/**
+	 * Fails the future of a class which is not going to show up.
+	 * @param waiter the future
+	 * @param name the plain internal name of the class
+	 */
+	private void fail(CompletableFuture<ClassData> waiter, String name) {
+		this.completion.whenComplete((result, error) ->
+			waiter.completeExceptionally(error != null ? unwrap(error) : new MappingNotFoundException("class", name)));
+	}
+
+	/**
+	 * Gets a future completed with the {@link ClassData} for a class as soon as it's parsed.
+	 * @param name the plain name of the class
+	 * @return a {@link CompletableFuture} completed with the {@link ClassData}, or failed with
+	 *         a {@link MappingNotFoundException} if the file turns out not to contain it, or
+	 *         with whatever went wrong while loading
+	 */
+	public CompletableFuture<ClassData> awaitClass(String name) {
+		String internalName = name.replace('.', '/');
+		ClassData data = this.classes.get(internalName);
+		if(data != null)
+			return CompletableFuture.completedFuture(data);
+		CompletableFuture<ClassData> waiter = this.waiters.computeIfAbsent(internalName, k -> new CompletableFuture<>());
+		data = this.classes.get(internalName); //it may have been published in the meantime
+		if(data != null) {
+			this.waiters.remove(internalName, waiter);
+			waiter.complete(data);
+		} else if(this.completion.isDone()) {
+			this.waiters.remove(internalName, waiter);
+			this.fail(waiter, internalName);
+		}
+		return waiter;
+	}
+
+	/**
+	 * Gets a future completed with this {@link Mapper} once every class has been parsed.
+	 * @return a {@link CompletableFuture} completed once loading is over, or failed
+	 *         with whatever went wrong while loading
+	 */
+	public CompletableFuture<Mapper> whenLoaded() {
+		return this.completion.thenApply(Function.identity());
+	}
+
+	/**
+	 * @return whether every class has been parsed successfully
+	 */
+	public boolean isLoaded() {
+		return this.completion.isDone() && !this.completion.isCompletedExceptionally();
+	}
+
+	/**
+	 * @return the number of classes that have been parsed so far
+	 */
+	public int getLoadedCount() {
+		return this.classes.size();
+	}
+
+	/**
+	 * Looks up a class, waiting for it to be parsed if it's not there yet. If the reader
+	 * has not started yet, it's run on the calling thread.
+	 * @param name the plain internal name of the desired class
+	 * @return the {@link ClassData}, or null if the file doesn't contain it
+	 * @throws InvalidResourceException if the resource could not be read
+	 * @throws MalformedMappingsException if the mappings are malformed
+	 */
+	@Override
+	protected ClassData findClassData(String name) {
+		ClassData data = this.classes.get(name);
+		if(data != null)
+			return data;
+		this.start();
+		try {
+			return this.awaitClass(name).join();
+		} catch(CompletionException e) {
+			if(e.getCause() instanceof MappingNotFoundException)
+				return null;
+			throw rethrow(e.getCause());
+		}
+	}
+
+	/**
+	 * Waits for every class to be parsed, and then gets the "raw mappings".
+	 * @return an unmodifiable {@link Map} tying each {@link ClassData} to the class' plain name
+	 * @throws InvalidResourceException if the resource could not be read
+	 * @throws MalformedMappingsException if the mappings are malformed
+	 */
+	@Override
+	public Map<String, ClassData> getRawMappings() {
+		this.start();
+		try {
+			this.completion.join();
+		} catch(CompletionException e) {
+			throw rethrow(e.getCause());
+		}
+		return Collections.unmodifiableMap(this.classes);
+	}
+
+	/**
+	 * A chunk of whole class blocks, parsed by whichever thread gets to it first:
+	 * a thread of the {@link Executor}, or the reader.
+	 */
+	private final class Chunk {
+		/**
+		 * The {@link IBlockMappingFormat} to parse with.
+		 */
+		private final IBlockMappingFormat format;
+
+		/**
+		 * The lines of the chunk.
+		 */
+		private final List<String> lines;
+
+		/**
+		 * The number of the first line of the chunk.
+		 */
+		private final int lineNumber;
+
+		/**
+		 * Whether errors should be ignored.
+		 */
+		private final boolean ignoreErrors;
+
+		/**
+		 * The {@link StringPool} to canonicalise strings with.
+		 */
+		private final StringPool stringPool;
+
+		/**
+		 * Whether a thread has taken it upon itself to parse the chunk.
+		 */
+		private final AtomicBoolean claimed = new AtomicBoolean();
+
+		/**
+		 * Completed with the parsed chunk.
+		 */
+		private final CompletableFuture<Mapper> parsed = new CompletableFuture<>();
+
+		/**
+		 * The constructor.
+		 * @param format the {@link IBlockMappingFormat} to parse with
+		 * @param lines the lines of the chunk, made of whole class blocks
+		 * @param lineNumber the number of the first line of the chunk
+		 * @param ignoreErrors try to ignore errors and keep going
+		 * @param stringPool the {@link StringPool} to canonicalise strings with
+		 */
+		private Chunk(IBlockMappingFormat format, List<String> lines, int lineNumber, boolean ignoreErrors, StringPool stringPool) {
+			this.format = format;
+			this.lines = lines;
+			this.lineNumber = lineNumber;
+			this.ignoreErrors = ignoreErrors;
+			this.stringPool = stringPool;
+		}
+
+		/**
+		 * Parses the chunk, unless another thread already is. A failure is reported
+		 * right away, rather than after the previous chunks, and before the chunk is
+		 * marked as failed: whoever is waiting on it must not be able to report success.
+		 */
+		private void run() {
+			if(!this.claimed.compareAndSet(false, true))
+				return;
+			try {
+				Mapper chunk = new Mapper();
+				this.format.parseBlocks(chunk, this.lines.iterator(), this.lineNumber, this.ignoreErrors, this.stringPool);
+				this.parsed.complete(chunk);
+			} catch(RuntimeException e) {
+				finish(e);
+				this.parsed.completeExceptionally(e);
+			}
+		}
+
+		/**
+		 * Parses the chunk, unless another thread already is, in which case it waits for it.
+		 * Since a chunk is only claimed by a thread that is about to parse it, this never
+		 * waits for the {@link Executor} to have a free thread.
+		 */
+		private void runAndWait() {
+			this.run();
+			try {
+				this.parsed.join();
+			} catch(CompletionException ignored) {} //already reported through finish
+		}
+	}
+
+	/**
+	 * Strips the {@link CompletionException} wrapping an error, if any.
+	 * @param error the error
+	 * @return the actual cause
+	 */
+	private static Throwable unwrap(Throwable error) {
+		return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+	}
+
+	/**
+	 * Turns the cause of a failure back into an unchecked exception, to be thrown.
+	 * @param cause the cause
+	 * @return the {@link RuntimeException} to throw
+	 */
+	private static RuntimeException rethrow(Throwable cause) {
+		if(cause instanceof RuntimeException)
+			return (RuntimeException) cause;
+		if(cause instanceof Error)
+			throw (Error) cause;
+		return new RuntimeException(cause);
+	}
+}
@@ -0,0 +1,325 @@
+package ftbsc.lll.mapper.utils;
+
+import ftbsc.lll.exceptions.MalformedMappingsException;
+import ftbsc.lll.mapper.data.ClassData;
+import ftbsc.lll.mapper.data.FieldData;
+import ftbsc.lll.mapper.data.MethodData;
+import ftbsc.lll.mapper.data.MethodSignature;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link Mapper} backed by a precompiled binary representation of another
+ * {@link Mapper}, usually memory-mapped from a file. Nothing is parsed upfront:
+ * the {@link ClassData} for a class is decoded straight from the buffer the
+ * first time it's requested.
+ * <p>
+ * The layout is as follows (all integers are big-endian):
+ * <ul>
+ *   <li>the magic number {@link #MAGIC} and the format {@link #VERSION};</li>
+ *   <li>the number of classes, followed by the absolute offset of each class
+ *       record, sorted by the UTF-8 bytes of the plain class name;</li>
+ *   <li>the class records: plain and mapped name, then the methods (name,
+ *       descriptor, mapped name) and the fields (name, mapped name, descriptor),
+ *       each list prefixed by its length.</li>
+ * </ul>
+ * Strings are stored as an unsigned short length followed by their UTF-8 bytes,
+ * with {@link #NULL_STRING} as length for null values.
+ */
+public class BinaryMapper extends Mapper {
+	/**
+	 * The magic number every binary mapping file starts with ("LLLM").
+	 */
+	public static final int MAGIC = 0x4C4C4C4D;
+
+	/**
+	 * The current version of the binary format.
+	 */
+	public static final int VERSION = 1;
+
+	/**
+	 * The length used to represent a null string.
+	 */
+	static final int NULL_STRING = 0xFFFF;
+
+	/**
+	 * The size of the header preceding the class offset table.
+	 */
+	private static final int HEADER_SIZE = 12;
+
+	/**
+	 * The buffer containing the binary mappings.
+	 */
+	private final ByteBuffer buffer;
+
+	/**
+	 * The number of classes in the buffer.
+	 */
+	private final int classCount;
+
+	/**
+	 * A {@link Map} holding the classes that have been decoded so far.
+	 */
+	private final Map<String, ClassData> loaded = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructs a new {@link BinaryMapper} reading from the given buffer, which
+	 * should contain data in the format produced by {@link #write(Mapper, OutputStream)}.
+	 * @param buffer the buffer to read from
+	 * @throws MalformedMappingsException if the buffer does not contain valid binary mappings
+	 */
+	public BinaryMapper(ByteBuffer buffer) throws MalformedMappingsException {
+		this.buffer = buffer;
+		if(buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+			throw new MalformedMappingsException("not a binary mapping file");
+		if(buffer.getInt(4) != VERSION)
+			throw new MalformedMappingsException(String.format("unsupported binary format version %d", buffer.getInt(4)));
+		this.classCount = buffer.getInt(8);
+	}
+
+	/**
+	 * Memory-maps a binary mapping file and builds a {@link BinaryMapper} on it.
+	 * @param path the path of the file
+	 * @return the {@link BinaryMapper}
+	 * @throws IOException if the file could not be mapped
+	 * @throws MalformedMappingsException if the file does not contain valid binary mappings
+	 */
+	public static BinaryMapper open(Path path) throws IOException, MalformedMappingsException {
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return new BinaryMapper(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Finds the class in the offset table through a binary search and decodes it,
+	 * unless it was already decoded before.
+	 * @param name the plain internal name of the desired class
+	 * @return the {@link ClassData}, or null if no mapping is found
+	 */
+	@Override
+	protected ClassData findClassData(String name) {
+		ClassData data = this.loaded.get(name);
+		if(data != null)
+			return data;
+		byte[] key = name.getBytes(StandardCharsets.UTF_8);
+		int low = 0, high = this.classCount - 1;
+		while(low <= high) {
+			int middle = (low + high) >>> 1;
+			int offset = this.classOffset(middle);
+			int cmp = compareString(this.buffer, offset, key);
+			if(cmp < 0) low = middle + 1;
+			else if(cmp > 0) high = middle - 1;
+			else return this.loaded.computeIfAbsent(name, k -> this.decodeClass(offset));
+		}
+		return null;
+	}
+
+	/**
+	 * Decodes every class in the buffer. This defeats the purpose of this
+	 * implementation, and should be avoided whenever possible.
+	 * @return an unmodifiable {@link Map} tying each {@link ClassData} to the class' plain name
+	 */
+	@Override
+	public Map<String, ClassData> getRawMappings() {
+		if(this.loaded.size() != this.classCount) {
+			for(int i = 0; i < this.classCount; i++) {
+				int offset = this.classOffset(i);
+				this.loaded.computeIfAbsent(readString(this.buffer, offset), k -> this.decodeClass(offset));
+			}
+		}
+		return Collections.unmodifiableMap(this.loaded);
+	}
+
+	/**
+	 * Gets the offset of the record for the class at the given position in the offset table.
+	 * @param index the index of the class
+	 * @return the offset of its record
+	 */
+	private int classOffset(int index) {
+		return this.buffer.getInt(HEADER_SIZE + index * 4);
+	}
+
+	/**
+	 * Decodes the class record at the given offset.
+	 * @param offset the offset of the record
+	 * @return the decoded {@link ClassData}
+	 */
+	private ClassData decodeClass(int offset) {
+		int[] position = { offset };
+		ClassData data = new ClassData(this.nextString(position), this.nextString(position));
+		int methodCount = this.nextInt(position);
+		for(int i = 0; i < methodCount; i++)
+			data.addMethod(this.nextString(position), this.nextString(position), this.nextString(position));
+		int fieldCount = this.nextInt(position);
+		for(int i = 0; i < fieldCount; i++) {
+			String fieldName = this.nextString(position);
+			String fieldNameMapped = this.nextString(position);
+			String descriptor = this.nextString(position);
+			if(descriptor == null)
+				data.addField(fieldName, fieldNameMapped);
+			else data.addField(fieldName, fieldNameMapped, descriptor);
+		}
+		return data;
+	}
+
+	/**
+	 * Reads an integer and moves the position forward.
+	 * @param position a single-element array holding the current position
+	 * @return the integer
+	 */
+	private int nextInt(int[] position) {
+		int value = this.buffer.getInt(position[0]);
+		position[0] += 4;
+		return value;
+	}
+
+	/**
+	 * Reads a string and moves the position forward.
+	 * @param position a single-element array holding the current position
+	 * @return the string, may be null
+	 */
+	private String nextString(int[] position) {
+		int length = Short.toUnsignedInt(this.buffer.getShort(position[0]));
+		String value = readString(this.buffer, position[0]);
+		position[0] += 2 + (length == NULL_STRING ? 0 : length);
+		return value;
+	}
+
+	/**
+	 * Reads the string at the given offset. Only absolute reads are used, so
+	 * that a single buffer may safely be shared across threads.
+	 * @param buffer the buffer to read from
+	 * @param offset the offset of the string
+	 * @return the string, may be null
+	 */
+	static String readString(ByteBuffer buffer, int offset) {
+		int length = Short.toUnsignedInt(buffer.getShort(offset));
+		if(length == NULL_STRING)
+			return null;
+		byte[] bytes = new byte[length];
+		for(int i = 0; i < length; i++)
+			bytes[i] = buffer.get(offset + 2 + i);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Compares the string at the given offset with the given UTF-8 bytes, without
+	 * decoding it.
+	 * @param buffer the buffer to read from
+	 * @param offset the offset of the string
+	 * @param key the bytes to compare against
+	 * @return a negative number, zero or a positive number as the string in the buffer
+	 *         is less than, equal to or greater than the key
+	 */
+	static int compareString(ByteBuffer buffer, int offset, byte[] key) {
+		int length = Short.toUnsignedInt(buffer.getShort(offset));
+		int common = Math.min(length, key.length);
+		for(int i = 0; i < common; i++) {
+			int cmp = Integer.compare(buffer.get(offset + 2 + i) & 0xFF, key[i] & 0xFF);
+			if(cmp != 0) return cmp;
+		}
+		return Integer.compare(length, key.length);
+	}
+
+	/**
+	 * Serializes a {@link Mapper} to the binary format.
+	 * @param mapper the {@link Mapper} to serialize
+	 * @param out the {@link OutputStream} to write to
+	 * @throws IOException if something goes wrong while writing
+	 */
+	public static void write(Mapper mapper, OutputStream out) throws IOException {
+		Map<String, ClassData> mappings = mapper.getRawMappings();
+		List<byte[]> names = new ArrayList<>(mappings.size());
+		for(String name : mappings.keySet())
+			names.add(name.getBytes(StandardCharsets.UTF_8));
+		names.sort(BinaryMapper::compareBytes);
+
+		ByteArrayOutputStream records = new ByteArrayOutputStream();
+		DataOutputStream recordsOut = new DataOutputStream(records);
+		int[] offsets = new int[names.size()];
+		int recordsStart = HEADER_SIZE + names.size() * 4;
+		for(int i = 0; i < names.size(); i++) {
+			offsets[i] = recordsStart + recordsOut.size();
+			String name = new String(names.get(i), StandardCharsets.UTF_8);
+			ClassData data = mappings.get(name);
+			writeString(recordsOut, name);
+			writeString(recordsOut, data.nameMapped);
+			recordsOut.writeInt(data.getMethods().size());
+			for(MethodData method : data.getMethods().values()) {
+				MethodSignature signature = method.signature;
+				writeString(recordsOut, signature.name);
+				writeString(recordsOut, signature.descriptor);
+				writeString(recordsOut, method.nameMapped);
+			}
+			recordsOut.writeInt(data.getFields().size());
+			for(FieldData field : data.getFields().values()) {
+				writeString(recordsOut, field.name);
+				writeString(recordsOut, field.nameMapped);
+				writeString(recordsOut, field.descriptor);
+			}
+		}
+
+		DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(out));
+		dataOut.writeInt(MAGIC);
+		dataOut.writeInt(VERSION);
+		dataOut.writeInt(names.size());
+		for(int offset : offsets)
+			dataOut.writeInt(offset);
+		records.writeTo(dataOut);
+		dataOut.flush();
+	}
+
+	/**
+	 * Serializes a {@link Mapper} to a binary mapping file, which may then be
+	 * loaded with {@link #open(Path)}.
+	 * @param mapper the {@link Mapper} to serialize
+	 * @param path the path of the file to write
+	 * @throws IOException if something goes wrong while writing
+	 */
+	public static void write(Mapper mapper, Path path) throws IOException {
+		try(OutputStream out = Files.newOutputStream(path)) {
+			write(mapper, out);
+		}
+	}
+
+	/**
+	 * Writes a length-prefixed string.
+	 * @param out the {@link DataOutputStream} to write to
+	 * @param value the string, may be null
+	 * @throws IOException if something goes wrong while writing
+	 */
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if(value == null) {
+			out.writeShort(NULL_STRING);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		if(bytes.length >= NULL_STRING)
+			throw new IllegalArgumentException(String.format("String is too long for the binary format: %s", value));
+		out.writeShort(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Compares two byte arrays as unsigned bytes, the same way lookups do.
+	 * @param a the first array
+	 * @param b the second array
+	 * @return the result of the comparison
+	 */
+	static int compareBytes(byte[] a, byte[] b) {
+		int common = Math.min(a.length, b.length);
+		for(int i = 0; i < common; i++) {
+			int cmp = Integer.compare(a[i] & 0xFF, b[i] & 0xFF);
+			if(cmp != 0) return cmp;
+		}
+		return Integer.compare(a.length, b.length);
+	}
+}
@@ -0,0 +1,155 @@
+package ftbsc.lll.mapper.utils;
+
+import org.objectweb.asm.ClassReader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * A model of the inheritance relationships between classes, used to resolve members
+ * referenced through a class that inherits them rather than declaring them.
+ * It only knows about the classes it was given: the hierarchy of any other class,
+ * such as those of the JDK, is assumed to end there. It's thread-safe.
+ */
+public class ClassHierarchy {
+	/**
+	 * A {@link Map} tying each class to its direct supertypes: the superclass first,
+	 * if any, then the interfaces.
+	 */
+	private final Map<String, String[]> supertypes = new ConcurrentHashMap<>();
+
+	/**
+	 * Registers a class.
+	 * @param name the internal name of the class
+	 * @param superName the internal name of its superclass, may be null
+	 * @param interfaces the internal names of the interfaces it directly implements
+	 */
+	public void add(String name, String superName, String... interfaces) {
+		String[] types = new String[interfaces.length + 1];
+		types[0] = superName;
+		System.arraycopy(interfaces, 0, types, 1, interfaces.length);
+		this.supertypes.put(name, types);
+	}
+
+	/**
+	 * Registers a compiled class, reading only its header.
+	 * @param classBytes the bytecode of the class
+	 */
+	public void addClass(byte[] classBytes) {
+		ClassReader reader = new ClassReader(classBytes);
+		this.add(reader.getClassName(), reader.getSuperName(), reader.getInterfaces());
+	}
+
+	/**
+	 * Registers every class in a jar.
+	 * @param jar the path of the jar
+	 * @throws IOException if the jar could not be read
+	 */
+	public void addJar(Path jar) throws IOException {
+		try(ZipFile zip = new ZipFile(jar.toFile())) {
+			for(Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
+				ZipEntry entry = e.nextElement();
+				if(!entry.isDirectory() && entry.getName().endsWith(".class")) {
+					try(InputStream in = zip.getInputStream(entry)) {
+						this.addClass(readAll(in));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Registers every class in a directory and its subdirectories.
+	 * @param directory the path of the directory
+	 * @throws IOException if the directory could not be read
+	 */
+	public void addDirectory(Path directory) throws IOException {
+		List<Path> classes = new ArrayList<>();
+		try(Stream<Path> files = Files.walk(directory)) {
+			files.filter(file -> file.toString().endsWith(".class")).forEach(classes::add);
+		}
+		for(Path file : classes)
+			this.addClass(Files.readAllBytes(file));
+	}
+
+	/**
+	 * Builds a {@link ClassHierarchy} from a classpath, made of jars and directories.
+	 * @param classpath the classpath, with entries separated by {@link File#pathSeparator}
+	 * @return the {@link ClassHierarchy}
+	 * @throws IOException if an entry could not be read
+	 */
+	public static ClassHierarchy fromClasspath(String classpath) throws IOException {
+		ClassHierarchy hierarchy = new ClassHierarchy();
+		for(String element : classpath.split(File.pathSeparator)) {
+			if(element.isEmpty())
+				continue;
+			Path path = Paths.get(element);
+			if(Files.isDirectory(path))
+				hierarchy.addDirectory(path);
+			else if(Files.isRegularFile(path))
+				hierarchy.addJar(path);
+		}
+		return hierarchy;
+	}
+
+	/**
+	 * Gets the superclass of a class.
+	 * @param name the internal name of the class
+	 * @return the internal name of its superclass, or null if it has none or is unknown
+	 */
+	public String getSuperclass(String name) {
+		String[] types = this.supertypes.get(name);
+		return types == null ? null : types[0];
+	}
+
+	/**
+	 * Gets the interfaces a class directly implements.
+	 * @param name the internal name of the class
+	 * @return the internal names of its interfaces, empty if it has none or is unknown
+	 */
+	public List<String> getInterfaces(String name) {
+		String[] types = this.supertypes.get(name);
+		if(types == null)
+			return Collections.emptyList();
+		return Collections.unmodifiableList(Arrays.asList(types).subList(1, types.length));
+	}
+
+	/**
+	 * @param name the internal name of a class
+	 * @return whether the class is known
+	 */
+	public boolean contains(String name) {
+		return this.supertypes.containsKey(name);
+	}
+
+	/**
+	 * @return the number of known classes
+	 */
+	public int size() {
+		return this.supertypes.size();
+	}
+
+	/**
+	 * Reads the whole content of a stream.
+	 * @param in the {@link InputStream}
+	 * @return its content
+	 * @throws IOException if something goes wrong while reading
+	 */
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		for(int read; (read = in.read(buffer)) != -1;)
+			bytes.write(buffer, 0, read);
+		return bytes.toByteArray();
+	}
+}
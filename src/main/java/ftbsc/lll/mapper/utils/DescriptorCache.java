@@ -0,0 +1,117 @@
+package ftbsc.lll.mapper.utils;
+
+import ftbsc.lll.mapper.Instrumentation;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A bounded, thread-safe memo of descriptor translations, tied to the
+ * {@link Mapper} that produces them. Once it's full, it's emptied and starts
+ * over, which is cheap and works well for the typical workload of a few
+ * thousand descriptors being mapped over and over.
+ */
+public class DescriptorCache {
+	/**
+	 * The maximum number of translations to keep.
+	 */
+	private final int capacity;
+
+	/**
+	 * The function computing the translation of a descriptor.
+	 */
+	private final Function<String, String> rewriter;
+
+	/**
+	 * A {@link Map} tying each descriptor to its translation.
+	 */
+	private final Map<String, String> cache = new ConcurrentHashMap<>();
+
+	/**
+	 * The number of lookups that found a cached translation.
+	 */
+	private final LongAdder hits = new LongAdder();
+
+	/**
+	 * The number of lookups that had to compute the translation.
+	 */
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * The number of times the cache was emptied for being full.
+	 */
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * The constructor.
+	 * @param capacity the maximum number of translations to keep
+	 * @param rewriter the function computing the translation of a descriptor
+	 */
+	public DescriptorCache(int capacity, Function<String, String> rewriter) {
+		this.capacity = capacity;
+		this.rewriter = rewriter;
+	}
+
+	/**
+	 * Translates a descriptor, computing it only if it's not cached already.
+	 * @param descriptor the descriptor
+	 * @return its translation
+	 */
+	public String map(String descriptor) {
+		String mapped = this.cache.get(descriptor);
+		if(Instrumentation.ENABLED)
+			Instrumentation.INSTANCE.onDescriptorLookup(mapped != null);
+		if(mapped != null) {
+			this.hits.increment();
+			return mapped;
+		}
+		this.misses.increment();
+		mapped = this.rewriter.apply(descriptor);
+		if(this.cache.size() >= this.capacity) {
+			this.cache.clear();
+			this.evictions.increment();
+		}
+		this.cache.put(descriptor, mapped);
+		return mapped;
+	}
+
+	/**
+	 * @return the number of lookups that found a cached translation
+	 */
+	public long getHits() {
+		return this.hits.sum();
+	}
+
+	/**
+	 * @return the number of lookups that had to compute the translation
+	 */
+	public long getMisses() {
+		return this.misses.sum();
+	}
+
+	/**
+	 * @return the number of times the cache was emptied for being full
+	 */
+	public long getEvictions() {
+		return this.evictions.sum();
+	}
+
+	/**
+	 * @return the number of translations currently cached
+	 */
+	public int size() {
+		return this.cache.size();
+	}
+
+	/**
+	 * Summarises the statistics of the cache.
+	 * @return a human-readable summary
+	 */
+	@Override
+	public String toString() {
+		return String.format("DescriptorCache[size=%d/%d, hits=%d, misses=%d, evictions=%d]",
+			this.size(), this.capacity, this.getHits(), this.getMisses(), this.getEvictions());
+	}
+}
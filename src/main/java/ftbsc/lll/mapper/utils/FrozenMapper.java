@@ -0,0 +1,135 @@
+package ftbsc.lll.mapper.utils;
+
+import ftbsc.lll.mapper.data.ClassData;
+
+import java.util.*;
+
+/**
+ * An immutable, compact {@link Mapper}. Classes are stored in an open-addressing
+ * table made of two parallel arrays, and each of them is a frozen {@link ClassData}
+ * keeping its members in sorted arrays. Successful lookups don't allocate anything.
+ * @see Mapper#freeze()
+ */
+public class FrozenMapper extends Mapper {
+	/**
+	 * The plain class names, laid out as an open-addressing hash table.
+	 * Empty slots are null.
+	 */
+	private final String[] keys;
+
+	/**
+	 * The {@link ClassData} for each slot in {@link #keys}.
+	 */
+	private final ClassData[] values;
+
+	/**
+	 * The number of classes.
+	 */
+	private final int size;
+
+	/**
+	 * Builds a frozen copy of the given {@link Mapper}.
+	 * @param mapper the {@link Mapper} to copy
+	 */
+	FrozenMapper(Mapper mapper) {
+		Map<String, ClassData> mappings = mapper.getRawMappings();
+		this.size = mappings.size();
+		int capacity = Integer.highestOneBit(Math.max(2, this.size * 2 - 1)) << 1; //load factor between 0.25 and 0.5
+		this.keys = new String[capacity];
+		this.values = new ClassData[capacity];
+		mappings.forEach((name, data) -> {
+			int slot = this.slot(name);
+			this.keys[slot] = name;
+			this.values[slot] = data.freeze();
+		});
+	}
+
+	/**
+	 * Finds the slot of a class name: either the one holding it, or the empty
+	 * one where it would go.
+	 * @param name the plain internal name
+	 * @return the slot
+	 */
+	private int slot(String name) {
+		int mask = this.keys.length - 1;
+		int hash = name.hashCode();
+		int slot = (hash ^ (hash >>> 16)) & mask;
+		while(this.keys[slot] != null && !this.keys[slot].equals(name))
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	@Override
+	protected ClassData findClassData(String name) {
+		return this.values[this.slot(name)];
+	}
+
+	/**
+	 * Gets a read-only view of the "raw mappings".
+	 * @return an unmodifiable {@link Map} tying each {@link ClassData} to the class' plain name
+	 */
+	@Override
+	public Map<String, ClassData> getRawMappings() {
+		return new AbstractMap<String, ClassData>() {
+			@Override
+			public ClassData get(Object key) {
+				return key instanceof String ? findClassData((String) key) : null;
+			}
+
+			@Override
+			public boolean containsKey(Object key) {
+				return this.get(key) != null;
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+
+			@Override
+			public Set<Entry<String, ClassData>> entrySet() {
+				return new AbstractSet<Entry<String, ClassData>>() {
+					@Override
+					public Iterator<Entry<String, ClassData>> iterator() {
+						return new Iterator<Entry<String, ClassData>>() {
+							private int next = this.advance(0);
+
+							private int advance(int from) {
+								while(from < keys.length && keys[from] == null)
+									from++;
+								return from;
+							}
+
+							@Override
+							public boolean hasNext() {
+								return this.next < keys.length;
+							}
+
+							@Override
+							public Entry<String, ClassData> next() {
+								if(!this.hasNext())
+									throw new NoSuchElementException();
+								Entry<String, ClassData> entry = new SimpleImmutableEntry<>(keys[this.next], values[this.next]);
+								this.next = this.advance(this.next + 1);
+								return entry;
+							}
+						};
+					}
+
+					@Override
+					public int size() {
+						return size;
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * @return this, as it's already frozen
+	 */
+	@Override
+	public Mapper freeze() {
+		return this;
+	}
+}
@@ -0,0 +1,178 @@
+package ftbsc.lll.mapper.utils;
+
+import ftbsc.lll.exceptions.AmbiguousMappingException;
+import ftbsc.lll.exceptions.MappingNotFoundException;
+import ftbsc.lll.mapper.data.ClassData;
+import ftbsc.lll.mapper.data.FieldData;
+import ftbsc.lll.mapper.data.MethodData;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves members through a {@link Mapper} the way the JVM does, looking into
+ * superclasses and interfaces when the class that is named doesn't declare them.
+ * Every resolution, misses included, is memoised, so repeated lookups of the
+ * same member cost a single hash lookup. It's thread-safe.
+ * <p>
+ * Like the {@link Mapper} it wraps, it should only be used once the mappings
+ * and the {@link ClassHierarchy} have been fully populated.
+ */
+public class HierarchyResolver {
+	/**
+	 * The {@link Mapper} to take the mappings from.
+	 */
+	private final Mapper mapper;
+
+	/**
+	 * The {@link ClassHierarchy} to walk.
+	 */
+	private final ClassHierarchy hierarchy;
+
+	/**
+	 * A {@link Map} memoising the resolved methods.
+	 */
+	private final Map<MemberQuery, Optional<MethodData>> methods = new ConcurrentHashMap<>();
+
+	/**
+	 * A {@link Map} memoising the resolved fields.
+	 */
+	private final Map<MemberQuery, Optional<FieldData>> fields = new ConcurrentHashMap<>();
+
+	/**
+	 * The constructor.
+	 * @param mapper the {@link Mapper} to take the mappings from
+	 * @param hierarchy the {@link ClassHierarchy} to walk
+	 */
+	public HierarchyResolver(Mapper mapper, ClassHierarchy hierarchy) {
+		this.mapper = mapper;
+		this.hierarchy = hierarchy;
+	}
+
+	/**
+	 * Resolves a method, looking first into the class and its superclasses,
+	 * and then into its superinterfaces.
+	 * @param owner the plain internal name of the class the method is referenced through
+	 * @param name the plain name of the method
+	 * @param descriptor the descriptor of the method, which may be partial
+	 * @return the {@link MethodData}, or null if no class in the hierarchy maps it
+	 * @throws AmbiguousMappingException if the partial descriptor matches more than one method
+	 */
+	public MethodData findMethod(String owner, String name, String descriptor) {
+		MemberQuery query = MemberQuery.method(owner, name, descriptor);
+		Optional<MethodData> resolved = this.methods.get(query);
+		if(resolved == null) {
+			resolved = Optional.ofNullable(this.walkMethod(query));
+			this.methods.putIfAbsent(query, resolved);
+		}
+		return resolved.orElse(null);
+	}
+
+	/**
+	 * Resolves a field, looking first into the class, then into its superinterfaces,
+	 * and then into its superclass.
+	 * @param owner the plain internal name of the class the field is referenced through
+	 * @param name the plain name of the field
+	 * @return the {@link FieldData}, or null if no class in the hierarchy maps it
+	 */
+	public FieldData findField(String owner, String name) {
+		MemberQuery query = MemberQuery.field(owner, name);
+		Optional<FieldData> resolved = this.fields.get(query);
+		if(resolved == null) {
+			resolved = Optional.ofNullable(this.walkField(query.owner, name, new HashSet<>()));
+			this.fields.putIfAbsent(query, resolved);
+		}
+		return resolved.orElse(null);
+	}
+
+	/**
+	 * Resolves a method, failing if it can't be found.
+	 * @param owner the plain internal name of the class the method is referenced through
+	 * @param name the plain name of the method
+	 * @param descriptor the descriptor of the method, which may be partial
+	 * @return the {@link MethodData}
+	 * @throws MappingNotFoundException if no class in the hierarchy maps it
+	 * @throws AmbiguousMappingException if the partial descriptor matches more than one method
+	 */
+	public MethodData getMethodData(String owner, String name, String descriptor) {
+		MethodData data = this.findMethod(owner, name, descriptor);
+		if(data == null)
+			throw new MappingNotFoundException("method", String.format("%s::%s%s", owner, name, descriptor));
+		else return data;
+	}
+
+	/**
+	 * Resolves a field, failing if it can't be found.
+	 * @param owner the plain internal name of the class the field is referenced through
+	 * @param name the plain name of the field
+	 * @return the {@link FieldData}
+	 * @throws MappingNotFoundException if no class in the hierarchy maps it
+	 */
+	public FieldData getFieldData(String owner, String name) {
+		FieldData data = this.findField(owner, name);
+		if(data == null)
+			throw new MappingNotFoundException("field", String.format("%s.%s", owner, name));
+		else return data;
+	}
+
+	/**
+	 * Walks the hierarchy looking for a method: first up the superclass chain,
+	 * then breadth-first through the interfaces met along the way.
+	 * @param query the method query
+	 * @return the {@link MethodData}, or null if it wasn't found
+	 */
+	private MethodData walkMethod(MemberQuery query) {
+		Set<String> visited = new HashSet<>();
+		Deque<String> interfaces = new ArrayDeque<>();
+		for(String current = query.owner; current != null && visited.add(current); current = this.hierarchy.getSuperclass(current)) {
+			MethodData data = this.lookupMethod(current, query);
+			if(data != null)
+				return data;
+			interfaces.addAll(this.hierarchy.getInterfaces(current));
+		}
+		while(!interfaces.isEmpty()) {
+			String current = interfaces.poll();
+			if(!visited.add(current))
+				continue;
+			MethodData data = this.lookupMethod(current, query);
+			if(data != null)
+				return data;
+			interfaces.addAll(this.hierarchy.getInterfaces(current));
+		}
+		return null;
+	}
+
+	/**
+	 * Looks for a method in a single class.
+	 * @param owner the plain internal name of the class
+	 * @param query the method query
+	 * @return the {@link MethodData}, or null if the class doesn't map it
+	 */
+	private MethodData lookupMethod(String owner, MemberQuery query) {
+		ClassData data = this.mapper.findClassData(owner);
+		return data == null ? null : data.findMethod(query.name, query.descriptor);
+	}
+
+	/**
+	 * Walks the hierarchy looking for a field: the class itself, then its
+	 * superinterfaces, then its superclass.
+	 * @param owner the plain internal name of the class
+	 * @param name the plain name of the field
+	 * @param visited the classes visited so far
+	 * @return the {@link FieldData}, or null if it wasn't found
+	 */
+	private FieldData walkField(String owner, String name, Set<String> visited) {
+		if(owner == null || !visited.add(owner))
+			return null;
+		ClassData data = this.mapper.findClassData(owner);
+		FieldData field = data == null ? null : data.findField(name);
+		if(field != null)
+			return field;
+		for(String superInterface : this.hierarchy.getInterfaces(owner)) {
+			field = this.walkField(superInterface, name, visited);
+			if(field != null)
+				return field;
+		}
+		return this.walkField(this.hierarchy.getSuperclass(owner), name, visited);
+	}
+}
@@ -0,0 +1,457 @@
+package ftbsc.lll.mapper.utils;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Remaps whole jars through a {@link Mapper}. Classes are remapped in parallel,
+ * while every other entry is streamed through unchanged, and entries are always
+ * written in the same order: the manifest first, then everything else sorted by
+ * name. Entries that were stored uncompressed are kept that way.
+ * Since remapping invalidates any signature, signature files are dropped and
+ * digests are stripped from the manifest. Directory entries are regenerated to
+ * match the remapped names.
+ */
+public class JarRemapper {
+	/**
+	 * The prefix of versioned entries in multi-release jars.
+	 */
+	private static final String VERSIONS_PREFIX = "META-INF/versions/";
+
+	/**
+	 * The name of the manifest.
+	 */
+	private static final String MANIFEST = "META-INF/MANIFEST.MF";
+
+	/**
+	 * The earliest time a zip entry can have, used for made up directories.
+	 */
+	private static final long DOS_EPOCH = new GregorianCalendar(1980, Calendar.JANUARY, 1).getTimeInMillis();
+
+	/**
+	 * The {@link MapperRemapper} used to remap classes.
+	 */
+	private final MapperRemapper remapper;
+
+	/**
+	 * The {@link ExecutorService} classes are remapped on.
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * The maximum number of entries that may be read ahead of the one being written,
+	 * which bounds the amount of remapped classes held in memory at once.
+	 */
+	private final int maxInFlight;
+
+	/**
+	 * Builds a {@link JarRemapper} working on the common {@link ForkJoinPool}.
+	 * @param mapper the {@link Mapper} to remap with
+	 */
+	public JarRemapper(Mapper mapper) {
+		this(mapper, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Builds a {@link JarRemapper} working on the given {@link ExecutorService}.
+	 * @param mapper the {@link Mapper} to remap with
+	 * @param executor the {@link ExecutorService} to remap classes on
+	 */
+	public JarRemapper(Mapper mapper, ExecutorService executor) {
+		this.remapper = new MapperRemapper(mapper);
+		this.executor = executor;
+		this.maxInFlight = Runtime.getRuntime().availableProcessors() * 4;
+	}
+
+	/**
+	 * Remaps a jar.
+	 * @param input the path of the jar to remap
+	 * @param output the path to write the remapped jar to
+	 * @return a {@link Report} on the work done
+	 * @throws IOException if something goes wrong while reading or writing
+	 */
+	public Report remap(Path input, Path output) throws IOException {
+		long start = System.nanoTime();
+		Report report = new Report();
+		try(ZipFile zip = new ZipFile(input.toFile());
+				ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(output)))) {
+			List<ZipEntry> entries = new ArrayList<>();
+			List<String> names = new ArrayList<>();
+			Map<ZipEntry, String> outputNames = new HashMap<>();
+			Map<String, ZipEntry> inputDirectories = new HashMap<>();
+			Set<String> inputParents = new HashSet<>();
+			for(Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
+				ZipEntry entry = e.nextElement();
+				addParents(entry.getName(), inputParents);
+				if(entry.isDirectory())
+					inputDirectories.put(entry.getName(), entry);
+				else if(!isSignature(entry.getName())) {
+					entries.add(entry);
+					outputNames.put(entry, this.outputName(entry));
+				}
+			}
+
+			//directories which held something in the input only come back if they still do
+			Map<String, ZipEntry> directories = new HashMap<>();
+			inputDirectories.forEach((name, entry) -> {
+				if(!inputParents.contains(name))
+					directories.put(name, entry);
+			});
+			Set<String> outputParents = new HashSet<>();
+			for(ZipEntry entry : entries)
+				addParents(outputNames.get(entry), outputParents);
+			for(String name : directories.keySet())
+				addParents(name, outputParents);
+			for(String name : outputParents) {
+				ZipEntry original = inputDirectories.get(name);
+				directories.putIfAbsent(name, original == null ? directoryEntry(name) : original);
+			}
+			directories.forEach((name, entry) -> {
+				entries.add(entry);
+				outputNames.put(entry, name);
+			});
+
+			entries.sort(Comparator.comparing((ZipEntry entry) -> !isManifest(outputNames.get(entry)))
+				.thenComparing(outputNames::get));
+			for(ZipEntry entry : entries)
+				names.add(outputNames.get(entry));
+
+			List<Future<byte[]>> pending = new ArrayList<>(Collections.nCopies(entries.size(), null));
+			int submitted = 0;
+			for(int i = 0; i < entries.size(); i++) {
+				for(; submitted < entries.size() && submitted <= i + this.maxInFlight; submitted++) {
+					ZipEntry entry = entries.get(submitted);
+					if(isClass(entry))
+						pending.set(submitted, this.executor.submit(() -> this.remapper.remapClass(readAll(zip, entry))));
+				}
+
+				ZipEntry entry = entries.get(i);
+				Future<byte[]> remapped = pending.set(i, null);
+				if(remapped != null)
+					this.writeClass(entry, names.get(i), await(remapped), out, report);
+				else if(entry.isDirectory())
+					this.writeDirectory(entry, names.get(i), out);
+				else if(names.get(i).equalsIgnoreCase(MANIFEST))
+					this.writeManifest(zip, entry, out, report);
+				else this.copyEntry(zip, entry, out, report);
+				report.entries++;
+			}
+		}
+		report.nanos = System.nanoTime() - start;
+		return report;
+	}
+
+	/**
+	 * Writes a remapped class, keeping it uncompressed if the original was.
+	 * @param original the original entry
+	 * @param name the name of the remapped entry
+	 * @param bytes the remapped bytecode
+	 * @param out the {@link ZipOutputStream} to write to
+	 * @param report the {@link Report} to update
+	 * @throws IOException if something goes wrong while writing
+	 */
+	private void writeClass(ZipEntry original, String name, byte[] bytes, ZipOutputStream out, Report report) throws IOException {
+		writeBytes(original, name, bytes, out);
+		report.classes++;
+		report.bytesRead += original.getSize();
+		report.bytesWritten += bytes.length;
+	}
+
+	/**
+	 * Writes the manifest, stripped of the digests of a signature, if there were any.
+	 * @param zip the {@link ZipFile} to read from
+	 * @param original the entry of the manifest
+	 * @param out the {@link ZipOutputStream} to write to
+	 * @param report the {@link Report} to update
+	 * @throws IOException if something goes wrong while reading or writing
+	 */
+	private void writeManifest(ZipFile zip, ZipEntry original, ZipOutputStream out, Report report) throws IOException {
+		byte[] bytes = readAll(zip, original);
+		Manifest manifest = new Manifest(new ByteArrayInputStream(bytes));
+		boolean stripped = false;
+		for(Iterator<Attributes> sections = manifest.getEntries().values().iterator(); sections.hasNext();) {
+			Attributes section = sections.next();
+			stripped |= section.keySet().removeIf(key -> key.toString().toUpperCase(Locale.ROOT).endsWith("-DIGEST"));
+			if(section.isEmpty())
+				sections.remove();
+		}
+		if(stripped) {
+			ByteArrayOutputStream rewritten = new ByteArrayOutputStream(bytes.length);
+			manifest.write(rewritten);
+			bytes = rewritten.toByteArray();
+		}
+		writeBytes(original, original.getName(), bytes, out);
+		report.bytesRead += original.getSize();
+		report.bytesWritten += bytes.length;
+	}
+
+	/**
+	 * Writes a directory entry.
+	 * @param original the original entry, which may have been made up
+	 * @param name the name of the directory
+	 * @param out the {@link ZipOutputStream} to write to
+	 * @throws IOException if something goes wrong while writing
+	 */
+	private void writeDirectory(ZipEntry original, String name, ZipOutputStream out) throws IOException {
+		ZipEntry entry = new ZipEntry(name);
+		entry.setTime(original.getTime());
+		out.putNextEntry(entry);
+		out.closeEntry();
+	}
+
+	/**
+	 * Writes an entry from memory, keeping it uncompressed if the original was.
+	 * @param original the original entry
+	 * @param name the name of the new entry
+	 * @param bytes the content of the new entry
+	 * @param out the {@link ZipOutputStream} to write to
+	 * @throws IOException if something goes wrong while writing
+	 */
+	private static void writeBytes(ZipEntry original, String name, byte[] bytes, ZipOutputStream out) throws IOException {
+		ZipEntry entry = new ZipEntry(name);
+		entry.setTime(original.getTime());
+		if(original.getMethod() == ZipEntry.STORED) {
+			CRC32 crc = new CRC32();
+			crc.update(bytes);
+			entry.setMethod(ZipEntry.STORED);
+			entry.setSize(bytes.length);
+			entry.setCompressedSize(bytes.length);
+			entry.setCrc(crc.getValue());
+		}
+		out.putNextEntry(entry);
+		out.write(bytes);
+		out.closeEntry();
+	}
+
+	/**
+	 * Streams an entry through unchanged. Stored entries are copied as they are,
+	 * along with their checksum, without going through a compressor.
+	 * @param zip the {@link ZipFile} to read from
+	 * @param original the entry
+	 * @param out the {@link ZipOutputStream} to write to
+	 * @param report the {@link Report} to update
+	 * @throws IOException if something goes wrong while reading or writing
+	 */
+	private void copyEntry(ZipFile zip, ZipEntry original, ZipOutputStream out, Report report) throws IOException {
+		ZipEntry entry = new ZipEntry(original);
+		if(entry.getMethod() != ZipEntry.STORED)
+			entry.setCompressedSize(-1); //it will be compressed again
+		out.putNextEntry(entry);
+		long copied = 0;
+		try(InputStream in = zip.getInputStream(original)) {
+			byte[] buffer = new byte[8192];
+			for(int read; (read = in.read(buffer)) != -1; copied += read)
+				out.write(buffer, 0, read);
+		}
+		out.closeEntry();
+		report.bytesRead += copied;
+		report.bytesWritten += copied;
+	}
+
+	/**
+	 * Makes up a directory entry for a directory that was not in the input.
+	 * @param name the name of the directory
+	 * @return the entry, dated to the DOS epoch so output stays reproducible
+	 */
+	private static ZipEntry directoryEntry(String name) {
+		ZipEntry entry = new ZipEntry(name);
+		entry.setTime(DOS_EPOCH);
+		return entry;
+	}
+
+	/**
+	 * Adds every directory an entry is in to the given {@link Set}.
+	 * @param name the name of the entry
+	 * @param parents the {@link Set} to add the directories to, each ending with '/'
+	 */
+	private static void addParents(String name, Set<String> parents) {
+		for(int i = name.indexOf('/'); i >= 0 && i < name.length() - 1; i = name.indexOf('/', i + 1))
+			parents.add(name.substring(0, i + 1));
+	}
+
+	/**
+	 * Computes the name an entry will have in the remapped jar.
+	 * @param entry the entry
+	 * @return its new name
+	 */
+	private String outputName(ZipEntry entry) {
+		if(!isClass(entry))
+			return entry.getName();
+		String name = entry.getName();
+		String prefix = "";
+		if(name.startsWith(VERSIONS_PREFIX)) {
+			int end = name.indexOf('/', VERSIONS_PREFIX.length());
+			if(end > 0) {
+				prefix = name.substring(0, end + 1);
+				name = name.substring(end + 1);
+			}
+		}
+		return prefix + this.remapper.map(name.substring(0, name.length() - ".class".length())) + ".class";
+	}
+
+	/**
+	 * @param entry the entry
+	 * @return whether the entry contains a class
+	 */
+	private static boolean isClass(ZipEntry entry) {
+		return !entry.isDirectory() && entry.getName().endsWith(".class");
+	}
+
+	/**
+	 * @param name the name of an entry
+	 * @return whether it's part of a jar signature, which remapping would invalidate
+	 */
+	private static boolean isSignature(String name) {
+		if(!name.regionMatches(true, 0, "META-INF/", 0, 9) || name.indexOf('/', 9) >= 0)
+			return false;
+		String upper = name.toUpperCase(Locale.ROOT);
+		return upper.endsWith(".SF") || upper.endsWith(".RSA") || upper.endsWith(".DSA") || upper.endsWith(".EC");
+	}
+
+	/**
+	 * @param name the name of an entry
+	 * @return whether it's the manifest or its directory, which must come first
+	 */
+	private static boolean isManifest(String name) {
+		return name.equals("META-INF/") || name.equalsIgnoreCase(MANIFEST);
+	}
+
+	/**
+	 * Reads the whole content of an entry.
+	 * @param zip the {@link ZipFile} to read from
+	 * @param entry the entry
+	 * @return its content
+	 * @throws IOException if something goes wrong while reading
+	 */
+	private static byte[] readAll(ZipFile zip, ZipEntry entry) throws IOException {
+		try(InputStream in = zip.getInputStream(entry)) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(entry.getSize() > 0 ? (int) entry.getSize() : 8192);
+			byte[] buffer = new byte[8192];
+			for(int read; (read = in.read(buffer)) != -1;)
+				bytes.write(buffer, 0, read);
+			return bytes.toByteArray();
+		}
+	}
+
+	/**
+	 * Waits for a remapped class, unwrapping whatever went wrong.
+	 * @param future the {@link Future} of the remapped class
+	 * @return the remapped bytecode
+	 * @throws IOException if the class could not be read
+	 */
+	private static byte[] await(Future<byte[]> future) throws IOException {
+		try {
+			return future.get();
+		} catch(ExecutionException e) {
+			if(e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			if(e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new RuntimeException(e.getCause());
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+	}
+
+	/**
+	 * A summary of the work done by {@link #remap(Path, Path)}.
+	 */
+	public static class Report {
+		/**
+		 * The number of entries written.
+		 */
+		private long entries;
+
+		/**
+		 * The number of classes remapped.
+		 */
+		private long classes;
+
+		/**
+		 * The total uncompressed size of the entries read.
+		 */
+		private long bytesRead;
+
+		/**
+		 * The total uncompressed size of the entries written.
+		 */
+		private long bytesWritten;
+
+		/**
+		 * The time it took, in nanoseconds.
+		 */
+		private long nanos;
+
+		/**
+		 * @return the number of entries written
+		 */
+		public long getEntries() {
+			return this.entries;
+		}
+
+		/**
+		 * @return the number of classes remapped
+		 */
+		public long getClasses() {
+			return this.classes;
+		}
+
+		/**
+		 * @return the total uncompressed size of the entries read, in bytes
+		 */
+		public long getBytesRead() {
+			return this.bytesRead;
+		}
+
+		/**
+		 * @return the total uncompressed size of the entries written, in bytes
+		 */
+		public long getBytesWritten() {
+			return this.bytesWritten;
+		}
+
+		/**
+		 * @return the time it took, in nanoseconds
+		 */
+		public long getNanos() {
+			return this.nanos;
+		}
+
+		/**
+		 * @return the number of entries processed per second
+		 */
+		public double getEntriesPerSecond() {
+			return this.entries / (this.nanos / 1e9);
+		}
+
+		/**
+		 * @return the amount of uncompressed data read per second, in megabytes
+		 */
+		public double getMegabytesPerSecond() {
+			return this.bytesRead / 1e6 / (this.nanos / 1e9);
+		}
+
+		/**
+		 * Summarises the throughput.
+		 * @return a human-readable summary
+		 */
+		@Override
+		public String toString() {
+			return String.format("Remapped %d classes out of %d entries in %.1f ms (%.0f entries/s, %.2f MB/s)",
+				this.classes, this.entries, this.nanos / 1e6, this.getEntriesPerSecond(), this.getMegabytesPerSecond());
+		}
+	}
+}
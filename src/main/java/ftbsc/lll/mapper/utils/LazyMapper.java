@@ -0,0 +1,220 @@
+package ftbsc.lll.mapper.utils;
+
+import ftbsc.lll.exceptions.MalformedMappingsException;
+import ftbsc.lll.mapper.IBlockMappingFormat;
+import ftbsc.lll.mapper.data.ClassData;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link Mapper} backed by a mapping file in a {@link IBlockMappingFormat},
+ * usually memory-mapped. On creation, a single pass over the file records where
+ * each class block starts: the members of a class are only parsed the first time
+ * that class is requested.
+ * Since blocks are parsed on demand, malformed lines are only reported when the
+ * class they belong to is first requested.
+ */
+public class LazyMapper extends Mapper {
+	/**
+	 * The format of the mapping file.
+	 */
+	private final IBlockMappingFormat format;
+
+	/**
+	 * The buffer containing the mapping file. It's never modified after
+	 * construction, and only ever read through duplicates.
+	 */
+	private final ByteBuffer buffer;
+
+	/**
+	 * Whether errors should be ignored.
+	 */
+	private final boolean ignoreErrors;
+
+	/**
+	 * The {@link StringPool} shared by the blocks parsed so far.
+	 */
+	private final StringPool stringPool = new StringPool();
+
+	/**
+	 * A {@link Map} tying each plain class name to the index of its block.
+	 */
+	private final Map<String, Integer> index = new HashMap<>();
+
+	/**
+	 * The offset of each block, followed by the end of the last one.
+	 */
+	private final int[] offsets;
+
+	/**
+	 * The line number each block starts at.
+	 */
+	private final int[] lineNumbers;
+
+	/**
+	 * A {@link Map} holding the classes that have been parsed so far.
+	 */
+	private final Map<String, ClassData> loaded = new ConcurrentHashMap<>();
+
+	/**
+	 * Builds the block index of the mapping file contained in the given buffer.
+	 * The first line is assumed to be the header, and is skipped.
+	 * @param format the format of the file
+	 * @param buffer the buffer containing the file
+	 * @param ignoreErrors try to ignore errors and keep going
+	 * @throws MalformedMappingsException if a class line is malformed and ignoreErrors is false
+	 */
+	public LazyMapper(IBlockMappingFormat format, ByteBuffer buffer, boolean ignoreErrors) throws MalformedMappingsException {
+		this.format = format;
+		this.buffer = buffer;
+		this.ignoreErrors = ignoreErrors;
+
+		List<Integer> offsets = new ArrayList<>();
+		List<Integer> lineNumbers = new ArrayList<>();
+		int limit = buffer.limit();
+		int lineNumber = 0;
+		for(int start = this.nextLine(0); start < limit; start = this.nextLine(start)) {
+			lineNumber++;
+			byte first = buffer.get(start);
+			if(first == ' ' || first == '\t' || first == '\r' || first == '\n')
+				continue;
+			String line = this.decode(start, this.lineEnd(start));
+			if(!format.isClassLine(line))
+				continue;
+			String name = format.getClassName(line);
+			if(name == null) {
+				if(this.ignoreErrors) continue;
+				throw new MalformedMappingsException(lineNumber, "malformed class declaration");
+			}
+			this.index.put(name, offsets.size());
+			offsets.add(start);
+			lineNumbers.add(lineNumber);
+		}
+
+		this.offsets = new int[offsets.size() + 1];
+		this.lineNumbers = new int[lineNumbers.size()];
+		for(int i = 0; i < lineNumbers.size(); i++) {
+			this.offsets[i] = offsets.get(i);
+			this.lineNumbers[i] = lineNumbers.get(i);
+		}
+		this.offsets[offsets.size()] = limit;
+	}
+
+	/**
+	 * Memory-maps a mapping file and builds a {@link LazyMapper} on it.
+	 * @param format the format of the file
+	 * @param path the path of the file
+	 * @param ignoreErrors try to ignore errors and keep going
+	 * @return the {@link LazyMapper}
+	 * @throws IOException if the file could not be mapped
+	 * @throws MalformedMappingsException if a class line is malformed and ignoreErrors is false
+	 */
+	public static LazyMapper open(IBlockMappingFormat format, Path path, boolean ignoreErrors)
+		throws IOException, MalformedMappingsException {
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return new LazyMapper(format, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), ignoreErrors);
+		}
+	}
+
+	/**
+	 * Parses the block of the class, unless it was already parsed before.
+	 * @param name the plain internal name of the desired class
+	 * @return the {@link ClassData}, or null if no mapping is found
+	 * @throws MalformedMappingsException if the block is malformed and errors aren't being ignored
+	 */
+	@Override
+	protected ClassData findClassData(String name) {
+		ClassData data = this.loaded.get(name);
+		if(data != null)
+			return data;
+		Integer block = this.index.get(name);
+		if(block == null)
+			return null;
+		return this.loaded.computeIfAbsent(name, k -> this.parseBlock(block));
+	}
+
+	/**
+	 * Parses every class in the file. This defeats the purpose of this
+	 * implementation, and should be avoided whenever possible.
+	 * @return an unmodifiable {@link Map} tying each {@link ClassData} to the class' plain name
+	 */
+	@Override
+	public Map<String, ClassData> getRawMappings() {
+		if(this.loaded.size() != this.index.size())
+			this.index.forEach((name, block) -> this.loaded.computeIfAbsent(name, k -> this.parseBlock(block)));
+		return Collections.unmodifiableMap(this.loaded);
+	}
+
+	/**
+	 * @return the number of classes in the file
+	 */
+	public int getClassCount() {
+		return this.index.size();
+	}
+
+	/**
+	 * @return the number of classes that have been parsed so far
+	 */
+	public int getLoadedCount() {
+		return this.loaded.size();
+	}
+
+	/**
+	 * Parses a single class block.
+	 * @param block the index of the block
+	 * @return the parsed {@link ClassData}, or null if nothing could be parsed
+	 */
+	private ClassData parseBlock(int block) {
+		String text = this.decode(this.offsets[block], this.offsets[block + 1]);
+		Mapper result = new Mapper();
+		Iterator<String> lines = new BufferedReader(new StringReader(text)).lines().iterator();
+		this.format.parseBlocks(result, lines, this.lineNumbers[block], this.ignoreErrors, this.stringPool);
+		Iterator<ClassData> parsed = result.getRawMappings().values().iterator();
+		return parsed.hasNext() ? parsed.next() : null;
+	}
+
+	/**
+	 * Finds the start of the line following the one at the given offset.
+	 * @param offset an offset within a line
+	 * @return the offset of the next line, or the limit of the buffer if there is none
+	 */
+	private int nextLine(int offset) {
+		int end = this.lineEnd(offset);
+		return end < this.buffer.limit() ? end + 1 : end;
+	}
+
+	/**
+	 * Finds the end of the line at the given offset.
+	 * @param offset an offset within a line
+	 * @return the offset of its line feed, or the limit of the buffer if there is none
+	 */
+	private int lineEnd(int offset) {
+		int limit = this.buffer.limit();
+		while(offset < limit && this.buffer.get(offset) != '\n')
+			offset++;
+		return offset;
+	}
+
+	/**
+	 * Decodes a slice of the buffer, dropping a trailing carriage return.
+	 * @param start the offset of the first byte
+	 * @param end the offset after the last byte
+	 * @return the decoded {@link String}
+	 */
+	private String decode(int start, int end) {
+		if(end > start && this.buffer.get(end - 1) == '\r')
+			end--;
+		ByteBuffer slice = this.buffer.duplicate();
+		slice.limit(end).position(start);
+		return StandardCharsets.UTF_8.decode(slice).toString();
+	}
+}
@@ -1,23 +1,41 @@
 package ftbsc.lll.mapper.utils;
 
+import ftbsc.lll.exceptions.AmbiguousMappingException;
 import ftbsc.lll.exceptions.MappingNotFoundException;
+import ftbsc.lll.mapper.IMapperInstrumentation.LookupKind;
+import ftbsc.lll.mapper.Instrumentation;
 import ftbsc.lll.mapper.data.ClassData;
 import ftbsc.lll.mapper.data.FieldData;
 import ftbsc.lll.mapper.data.MethodData;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 
 /**
  * An object containing parsed mapping data, which can
  * apply a conversion as requested.
  */
 public class Mapper {
+	/**
+	 * The maximum number of descriptor translations to keep in the {@link DescriptorCache}.
+	 */
+	public static final int DESCRIPTOR_CACHE_CAPACITY = 8192;
+
 	/**
 	 * A {@link Map} tying each plain class name to its class data.
 	 */
 	protected final Map<String, ClassData> mappings = new HashMap<>();
 
+	/**
+	 * The inverted counterpart of this mapper. It's built at most once, and the
+	 * two are then tied together, so that inverting either of them is free.
+	 */
+	private volatile Mapper inverted = null;
+
+	/**
+	 * The memo of the descriptors mapped through this mapper, created lazily.
+	 */
+	private volatile DescriptorCache descriptorCache = null;
+
 	/**
 	 * Gets the {@link ClassData} given the plain name.
 	 * @param name the plain internal name of the desired class
@@ -25,12 +43,25 @@ public class Mapper {
 	 * @throws MappingNotFoundException if no mapping is found
 	 */
 	public ClassData getClassData(String name) throws MappingNotFoundException {
-		ClassData data = this.mappings.get(name.replace('.', '/'));
+		ClassData data = this.findClassData(name.replace('.', '/'));
+		if(Instrumentation.ENABLED)
+			Instrumentation.INSTANCE.onLookup(LookupKind.CLASS, data != null);
 		if(data == null)
 			throw new MappingNotFoundException("class", name);
 		else return data;
 	}
 
+	/**
+	 * Looks up the {@link ClassData} for the given internal name, without throwing
+	 * if it's missing. Implementations that store their data somewhere other than
+	 * {@link #mappings} should override this rather than {@link #getClassData(String)}.
+	 * @param name the plain internal name of the desired class
+	 * @return the {@link ClassData}, or null if no mapping is found
+	 */
+	protected ClassData findClassData(String name) {
+		return this.mappings.get(name);
+	}
+
 	/**
 	 * Gets the mapped name of a method
 	 * @param parent the plain internal name of the parent class
@@ -40,7 +71,12 @@ public class Mapper {
 	 * @throws MappingNotFoundException if no mapping is found
 	 */
 	public MethodData getMethodData(String parent, String name, String descriptor) throws MappingNotFoundException {
-		return this.getClassData(parent).mapMethod(name, descriptor);
+		ClassData data = this.getClassData(parent);
+		if(!Instrumentation.ENABLED)
+			return data.mapMethod(name, descriptor);
+		MethodData method = data.findMethod(name, descriptor);
+		Instrumentation.INSTANCE.onLookup(LookupKind.METHOD, method != null);
+		return method != null ? method : data.mapMethod(name, descriptor);
 	}
 
 	/**
@@ -51,7 +87,57 @@ public class Mapper {
 	 * @throws MappingNotFoundException if no mapping is found
 	 */
 	public FieldData getFieldData(String parent, String name) throws MappingNotFoundException {
-		return this.getClassData(parent).mapField(name);
+		ClassData data = this.getClassData(parent);
+		if(!Instrumentation.ENABLED)
+			return data.mapField(name);
+		FieldData field = data.findField(name);
+		Instrumentation.INSTANCE.onLookup(LookupKind.FIELD, field != null);
+		return field != null ? field : data.mapField(name);
+	}
+
+	/**
+	 * Resolves a batch of member queries at once. Queries are grouped by owner, so
+	 * that each class is only looked up once, and misses are recorded in the result
+	 * rather than thrown.
+	 * @param queries the {@link MemberQuery}s to resolve
+	 * @return a {@link ResolvedMembers} holding the results and the misses
+	 */
+	public ResolvedMembers resolve(Collection<MemberQuery> queries) {
+		Map<String, List<MemberQuery>> byOwner = new LinkedHashMap<>();
+		for(MemberQuery query : queries)
+			byOwner.computeIfAbsent(query.owner, k -> new ArrayList<>()).add(query);
+
+		ResolvedMembers result = new ResolvedMembers();
+		byOwner.forEach((owner, members) -> {
+			ClassData data = this.findClassData(owner);
+			if(Instrumentation.ENABLED)
+				Instrumentation.INSTANCE.onLookup(LookupKind.CLASS, data != null);
+			if(data == null) {
+				members.forEach(result::addMissing);
+				return;
+			}
+			result.addOwner(data);
+			for(MemberQuery query : members) {
+				if(query.isMethod()) {
+					try {
+						MethodData method = data.findMethod(query.name, query.descriptor);
+						if(Instrumentation.ENABLED)
+							Instrumentation.INSTANCE.onLookup(LookupKind.METHOD, method != null);
+						if(method == null) result.addMissing(query);
+						else result.addMethod(query, method);
+					} catch(AmbiguousMappingException e) {
+						result.addAmbiguous(query, e);
+					}
+				} else {
+					FieldData field = data.findField(query.name);
+					if(Instrumentation.ENABLED)
+						Instrumentation.INSTANCE.onLookup(LookupKind.FIELD, field != null);
+					if(field == null) result.addMissing(query);
+					else result.addField(query, field);
+				}
+			}
+		});
+		return result;
 	}
 
 	/**
@@ -63,16 +149,83 @@ public class Mapper {
 	}
 
 	/**
-	 * Builds a new {@link Mapper} that functions in reverse to this one (i.e. one that
+	 * Gets the {@link DescriptorCache} memoising the descriptors mapped through this mapper.
+	 * Like {@link #getInverted()}, it should only be used once this mapper has been fully
+	 * populated, as translations that were cached before a change won't be updated.
+	 * @return the {@link DescriptorCache}
+	 */
+	public DescriptorCache getDescriptorCache() {
+		DescriptorCache cache = this.descriptorCache;
+		if(cache == null) {
+			synchronized(this) {
+				cache = this.descriptorCache;
+				if(cache == null)
+					this.descriptorCache = cache = new DescriptorCache(DESCRIPTOR_CACHE_CAPACITY,
+						descriptor -> MappingUtils.mapDescriptor(descriptor, this));
+			}
+		}
+		return cache;
+	}
+
+	/**
+	 * Builds an immutable, compact copy of this mapper, meant to be used once
+	 * it has been fully populated. It keeps the same lookup behaviour, but
+	 * takes up far less memory and doesn't allocate on successful lookups.
+	 * @return the frozen {@link Mapper}
+	 */
+	public Mapper freeze() {
+		return new FrozenMapper(this);
+	}
+
+	/**
+	 * Gets a {@link Mapper} that functions in reverse to this one (i.e. one that
 	 * considers as "mapped" what this one considers plain, and vice versa).
+	 * The inverted mapper is built the first time this is called, and then shared:
+	 * calling this again, or calling it on the inverted mapper, costs nothing.
+	 * For this reason, it should only be called once this mapper has been fully
+	 * populated, as any later changes won't be reflected on the inverted one.
 	 * @return the inverted mapper
 	 */
 	public Mapper getInverted() {
-		Mapper inverted = new Mapper();
-		this.mappings.forEach((name, data) -> {
-			ClassData reverse = data.generateReverseMappings(this);
-			inverted.mappings.put(data.nameMapped, reverse);
-		});
+		Mapper inverted = this.inverted;
+		if(inverted == null) {
+			synchronized(this) {
+				inverted = this.inverted;
+				if(inverted == null) {
+					Mapper built = new Mapper();
+					this.getRawMappings().forEach((name, data) -> {
+						ClassData reverse = data.generateReverseMappings(this);
+						built.mappings.put(data.nameMapped, reverse);
+					});
+					pair(this, built);
+					inverted = built;
+				}
+			}
+		}
 		return inverted;
 	}
+
+	/**
+	 * Discards the inverted mapper and the descriptor cache, so that they are built
+	 * again from the current mappings the next time they're needed. Implementations
+	 * whose mappings may change after construction should call this after every change.
+	 */
+	protected void invalidateCaches() {
+		synchronized(this) {
+			this.inverted = null;
+			this.descriptorCache = null;
+		}
+	}
+
+	/**
+	 * Ties together two {@link Mapper}s that are known to be the inverse of each other,
+	 * so that {@link #getInverted()} on either of them returns the other. This is meant
+	 * for formats that build both directions at once while parsing.
+	 * @param mapper the {@link Mapper}
+	 * @param inverted the inverted {@link Mapper}
+	 */
+	public static void pair(Mapper mapper, Mapper inverted) {
+		mapper.inverted = inverted;
+		inverted.inverted = mapper;
+	}
 }
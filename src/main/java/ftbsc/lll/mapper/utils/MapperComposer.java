@@ -0,0 +1,128 @@
+package ftbsc.lll.mapper.utils;
+
+import ftbsc.lll.mapper.data.ClassData;
+import ftbsc.lll.mapper.data.FieldData;
+import ftbsc.lll.mapper.data.MethodData;
+import ftbsc.lll.mapper.data.MethodSignature;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Composes an ordered sequence of {@link Mapper}s, each one taking as input the output
+ * of the previous one, into a single flattened {@link Mapper}.
+ * Names missing from an intermediate stage are passed through unchanged.
+ */
+public class MapperComposer {
+	/**
+	 * The {@link Mapper}s to compose, in order.
+	 */
+	private final List<Mapper> stages;
+
+	/**
+	 * For each stage, a {@link Map} tying each plain class name to its mapped name.
+	 */
+	private final List<Map<String, String>> classTables;
+
+	/**
+	 * For each stage, a {@link Map} caching the translation of the descriptors
+	 * that went through it.
+	 */
+	private final List<Map<String, String>> descriptorCaches;
+
+	/**
+	 * The constructor. It builds the class translation tables of every stage.
+	 * @param stages the {@link Mapper}s to compose, in order
+	 */
+	private MapperComposer(List<Mapper> stages) {
+		this.stages = stages;
+		this.classTables = new ArrayList<>(stages.size());
+		this.descriptorCaches = new ArrayList<>(stages.size());
+		for(Mapper stage : stages) {
+			Map<String, String> table = new HashMap<>();
+			stage.getRawMappings().forEach((name, data) -> table.put(name, data.nameMapped));
+			this.classTables.add(table);
+			this.descriptorCaches.add(new ConcurrentHashMap<>());
+		}
+	}
+
+	/**
+	 * Composes the given {@link Mapper}s into a single one, which maps the plain names
+	 * of the first to the mapped names of the last. Classes are composed in parallel.
+	 * @param stages the {@link Mapper}s to compose, in order
+	 * @return the composed {@link Mapper}
+	 */
+	public static Mapper compose(List<Mapper> stages) {
+		Mapper result = new Mapper();
+		if(stages.isEmpty())
+			return result;
+		MapperComposer composer = new MapperComposer(stages);
+		List<ClassData> composed = stages.get(0).getRawMappings().values().parallelStream()
+			.map(composer::composeClass)
+			.collect(Collectors.toList());
+		for(ClassData data : composed)
+			result.getRawMappings().put(data.name, data);
+		return result;
+	}
+
+	/**
+	 * Follows a class of the first stage, and all of its members, through every stage.
+	 * @param data the {@link ClassData} from the first stage
+	 * @return the composed {@link ClassData}
+	 */
+	private ClassData composeClass(ClassData data) {
+		ClassData[] path = new ClassData[this.stages.size()];
+		path[0] = data;
+		String nameMapped = data.nameMapped;
+		for(int i = 1; i < path.length; i++) {
+			path[i] = this.stages.get(i).findClassData(nameMapped);
+			if(path[i] != null)
+				nameMapped = path[i].nameMapped;
+		}
+
+		ClassData sumData = new ClassData(data.name, nameMapped);
+
+		data.getMethods().forEach((signature, methodData) -> {
+			String methodName = methodData.nameMapped;
+			String descriptor = this.mapDescriptor(signature.descriptor, 0);
+			for(int i = 1; i < path.length; i++) {
+				if(path[i] != null) {
+					MethodData next = path[i].getMethods().get(new MethodSignature(methodName, descriptor));
+					if(next != null)
+						methodName = next.nameMapped;
+				}
+				descriptor = this.mapDescriptor(descriptor, i);
+			}
+			sumData.addMethod(signature.name, methodName, signature.descriptor);
+		});
+
+		data.getFields().forEach((fieldName, fieldData) -> {
+			String name = fieldData.nameMapped;
+			for(int i = 1; i < path.length; i++) {
+				if(path[i] != null) {
+					FieldData next = path[i].getFields().get(name);
+					if(next != null)
+						name = next.nameMapped;
+				}
+			}
+			sumData.addField(fieldName, name, fieldData.descriptor);
+		});
+
+		return sumData;
+	}
+
+	/**
+	 * Translates a descriptor through the given stage, caching the result.
+	 * @param descriptor the descriptor, in the plain namespace of the stage
+	 * @param stage the index of the stage
+	 * @return the descriptor, in the mapped namespace of the stage
+	 */
+	private String mapDescriptor(String descriptor, int stage) {
+		Map<String, String> table = this.classTables.get(stage);
+		return this.descriptorCaches.get(stage).computeIfAbsent(descriptor, d -> MappingUtils.mapDescriptor(d, table::get));
+	}
+}
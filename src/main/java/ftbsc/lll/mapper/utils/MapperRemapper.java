@@ -0,0 +1,234 @@
+package ftbsc.lll.mapper.utils;
+
+import ftbsc.lll.mapper.data.ClassData;
+import ftbsc.lll.mapper.data.FieldData;
+import ftbsc.lll.mapper.data.MethodData;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.ClassRemapper;
+import org.objectweb.asm.commons.MethodRemapper;
+import org.objectweb.asm.commons.Remapper;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An ASM {@link Remapper} driven by a {@link Mapper}, meant to be used with a
+ * {@link ClassRemapper} to remap whole classes in a single visitor pass.
+ * Classes and members the {@link Mapper} doesn't know are left untouched.
+ * Lambdas and method references are only remapped when going through
+ * {@link #remapClass(byte[])} or {@link #remapClass(ClassNode)}, since the
+ * name at their call sites depends on the bootstrap method.
+ * Every translation is cached, misses included, so each distinct reference is
+ * only ever looked up once per instance. It's thread-safe, so a single instance
+ * may be shared across threads remapping different classes.
+ */
+public class MapperRemapper extends Remapper {
+	/**
+	 * The {@link Mapper} to take the mappings from.
+	 */
+	private final Mapper mapper;
+
+	/**
+	 * The {@link HierarchyResolver} used to find inherited members, or null
+	 * if members should only be looked up in the class that is named.
+	 */
+	private final HierarchyResolver resolver;
+
+	/**
+	 * A {@link Map} caching the mapped name of each class that was looked up.
+	 */
+	private final Map<String, String> classNames = new ConcurrentHashMap<>();
+
+	/**
+	 * A {@link Map} caching the mapped name of each member that was looked up.
+	 */
+	private final Map<MemberQuery, String> memberNames = new ConcurrentHashMap<>();
+
+	/**
+	 * The constructor.
+	 * @param mapper the {@link Mapper} to take the mappings from
+	 */
+	public MapperRemapper(Mapper mapper) {
+		this.mapper = mapper;
+		this.resolver = null;
+	}
+
+	/**
+	 * Constructs a {@link MapperRemapper} which also finds members referenced
+	 * through a class that inherits them.
+	 * @param mapper the {@link Mapper} to take the mappings from
+	 * @param hierarchy the {@link ClassHierarchy} to resolve members through
+	 */
+	public MapperRemapper(Mapper mapper, ClassHierarchy hierarchy) {
+		this.mapper = mapper;
+		this.resolver = new HierarchyResolver(mapper, hierarchy);
+	}
+
+	/**
+	 * Maps the internal name of a class.
+	 * @param internalName the plain internal name of the class
+	 * @return the mapped internal name, or the same name if it's unknown
+	 */
+	@Override
+	public String map(String internalName) {
+		return this.classNames.computeIfAbsent(internalName, name -> {
+			ClassData data = this.mapper.findClassData(name);
+			return data == null ? name : data.nameMapped;
+		});
+	}
+
+	/**
+	 * Maps a type descriptor through the {@link DescriptorCache} of the {@link Mapper}.
+	 * @param descriptor the plain descriptor
+	 * @return the mapped descriptor
+	 */
+	@Override
+	public String mapDesc(String descriptor) {
+		return this.mapper.getDescriptorCache().map(descriptor);
+	}
+
+	/**
+	 * Maps a method descriptor through the {@link DescriptorCache} of the {@link Mapper}.
+	 * @param methodDescriptor the plain method descriptor
+	 * @return the mapped method descriptor
+	 */
+	@Override
+	public String mapMethodDesc(String methodDescriptor) {
+		return this.mapper.getDescriptorCache().map(methodDescriptor);
+	}
+
+	/**
+	 * Maps the name of a method.
+	 * @param owner the plain internal name of the class declaring the method
+	 * @param name the plain name of the method
+	 * @param descriptor the plain descriptor of the method
+	 * @return the mapped name, or the same name if it's unknown
+	 */
+	@Override
+	public String mapMethodName(String owner, String name, String descriptor) {
+		return this.memberNames.computeIfAbsent(MemberQuery.method(owner, name, descriptor), query -> {
+			MethodData method;
+			if(this.resolver != null)
+				method = this.resolver.findMethod(query.owner, name, descriptor);
+			else {
+				ClassData data = this.mapper.findClassData(query.owner);
+				method = data == null ? null : data.findMethod(name, descriptor);
+			}
+			return method == null ? name : method.nameMapped;
+		});
+	}
+
+	/**
+	 * Maps the name of a field.
+	 * @param owner the plain internal name of the class declaring the field
+	 * @param name the plain name of the field
+	 * @param descriptor the plain descriptor of the field
+	 * @return the mapped name, or the same name if it's unknown
+	 */
+	@Override
+	public String mapFieldName(String owner, String name, String descriptor) {
+		return this.memberNames.computeIfAbsent(MemberQuery.field(owner, name), query -> {
+			FieldData field;
+			if(this.resolver != null)
+				field = this.resolver.findField(query.owner, name);
+			else {
+				ClassData data = this.mapper.findClassData(query.owner);
+				field = data == null ? null : data.findField(name);
+			}
+			return field == null ? name : field.nameMapped;
+		});
+	}
+
+	/**
+	 * Remaps a compiled class.
+	 * @param classBytes the bytecode of the class
+	 * @return the bytecode of the remapped class
+	 */
+	public byte[] remapClass(byte[] classBytes) {
+		ClassWriter writer = new ClassWriter(0);
+		new ClassReader(classBytes).accept(new LambdaClassRemapper(writer, this), 0);
+		return writer.toByteArray();
+	}
+
+	/**
+	 * Remaps a {@link ClassNode} into a new one, leaving the original untouched.
+	 * @param node the {@link ClassNode} to remap
+	 * @return the remapped {@link ClassNode}
+	 */
+	public ClassNode remapClass(ClassNode node) {
+		ClassNode remapped = new ClassNode();
+		node.accept(new LambdaClassRemapper(remapped, this));
+		return remapped;
+	}
+
+	/**
+	 * A {@link ClassRemapper} whose methods are visited by a {@link LambdaMethodRemapper}.
+	 */
+	private static class LambdaClassRemapper extends ClassRemapper {
+		/**
+		 * The constructor.
+		 * @param classVisitor the {@link ClassVisitor} to forward the remapped class to
+		 * @param remapper the {@link Remapper} to use
+		 */
+		LambdaClassRemapper(ClassVisitor classVisitor, Remapper remapper) {
+			super(Opcodes.ASM9, classVisitor, remapper);
+		}
+
+		@Override
+		protected MethodVisitor createMethodRemapper(MethodVisitor methodVisitor) {
+			return new LambdaMethodRemapper(methodVisitor, this.remapper);
+		}
+	}
+
+	/**
+	 * A {@link MethodRemapper} which also maps the name at the call sites of lambdas
+	 * and method references. Those are invokedynamic instructions bootstrapped by the
+	 * {@link java.lang.invoke.LambdaMetafactory}, whose name is the one of the method
+	 * being implemented: left alone, the generated class would fail with an
+	 * {@link AbstractMethodError} as soon as it's called.
+	 */
+	private static class LambdaMethodRemapper extends MethodRemapper {
+		/**
+		 * The internal name of the {@link java.lang.invoke.LambdaMetafactory}.
+		 */
+		private static final String LAMBDA_METAFACTORY = "java/lang/invoke/LambdaMetafactory";
+
+		/**
+		 * The constructor.
+		 * @param methodVisitor the {@link MethodVisitor} to forward the remapped method to
+		 * @param remapper the {@link Remapper} to use
+		 */
+		LambdaMethodRemapper(MethodVisitor methodVisitor, Remapper remapper) {
+			super(Opcodes.ASM9, methodVisitor, remapper);
+		}
+
+		/**
+		 * Maps the name of lambda call sites as a method of the functional interface they
+		 * return, with the erased descriptor passed as the first bootstrap argument, then
+		 * remaps the rest of the instruction as usual.
+		 * @param name the name of the call site
+		 * @param descriptor the descriptor of the call site
+		 * @param bootstrapMethodHandle the bootstrap method
+		 * @param bootstrapMethodArguments the bootstrap method constant arguments
+		 */
+		@Override
+		public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
+			if(LAMBDA_METAFACTORY.equals(bootstrapMethodHandle.getOwner())
+				&& ("metafactory".equals(bootstrapMethodHandle.getName()) || "altMetafactory".equals(bootstrapMethodHandle.getName()))
+				&& bootstrapMethodArguments.length > 0 && bootstrapMethodArguments[0] instanceof Type) {
+				Type returnType = Type.getReturnType(descriptor);
+				if(returnType.getSort() == Type.OBJECT)
+					name = this.remapper.mapMethodName(returnType.getInternalName(), name,
+						((Type) bootstrapMethodArguments[0]).getDescriptor());
+			}
+			super.visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments);
+		}
+	}
+}
@@ -1,9 +1,15 @@
 package ftbsc.lll.mapper.utils;
 
-import ftbsc.lll.exceptions.MappingNotFoundException;
-import ftbsc.lll.utils.DescriptorBuilder;
+import ftbsc.lll.mapper.data.ClassData;
+import ftbsc.lll.mapper.data.FieldData;
+import ftbsc.lll.mapper.data.MethodData;
 import org.objectweb.asm.Type;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
 /**
  * A collection of static utility methods correlated to
  * mappers.
@@ -12,21 +18,14 @@ public class MappingUtils {
 
 	/**
 	 * Maps a method descriptor, replacing its class references with their mapped counterparts.
+	 * Translations are memoised in the {@link DescriptorCache} of the {@link Mapper}.
 	 * @param descriptor a {@link String} containing the descriptor
 	 * @param mapper the {@link Mapper} to use for the process
 	 * @param reverse if true it uses the inverted mapper rather than the normal one
 	 * @return the mapped descriptor
 	 */
 	public static String mapMethodDescriptor(String descriptor, Mapper mapper, boolean reverse) {
-		Type method = Type.getMethodType(descriptor);
-		Type[] arguments = method.getArgumentTypes();
-		Type returnType = method.getReturnType();
-
-		Type[] mappedArguents = new Type[arguments.length];
-		for(int i = 0; i < mappedArguents.length; i++)
-			mappedArguents[i] = mapType(arguments[i], mapper, reverse);
-
-		return Type.getMethodDescriptor(mapType(returnType, mapper, reverse), mappedArguents);
+		return (reverse ? mapper.getInverted() : mapper).getDescriptorCache().map(descriptor);
 	}
 
 	/**
@@ -37,28 +36,97 @@ public class MappingUtils {
 	 * @return the mapped type
 	 */
 	public static Type mapType(Type type, Mapper mapper, boolean reverse) {
-		//unwrap arrays
-		Type unwrapped = type;
-		int arrayLevel = 0;
-		while(unwrapped.getSort() == Type.ARRAY) {
-			unwrapped = unwrapped.getElementType();
-			arrayLevel++;
-		}
-
 		//if it's a primitive no operation is needed
 		if(type.getSort() < Type.ARRAY)
 			return type;
 
-		String internalName = type.getInternalName();
+		String descriptor = type.getDescriptor();
+		String mapped = (reverse ? mapper.getInverted() : mapper).getDescriptorCache().map(descriptor);
+		return mapped.equals(descriptor) ? type : Type.getType(mapped);
+	}
 
-		String internalNameMapped;
-		try {
-			internalNameMapped = reverse
-				? mapper.getInverted().getClassData(internalName).nameMapped
-				: mapper.getClassData(internalName).nameMapped;
-			return Type.getType(DescriptorBuilder.nameToDescriptor(internalNameMapped, arrayLevel));
-		} catch(MappingNotFoundException e) {
-			return type;
+	/**
+	 * Maps any descriptor, replacing its class references with their mapped counterparts
+	 * according to the given {@link Mapper}. Classes it doesn't know are left untouched.
+	 * This does not use the cache: {@link #mapMethodDescriptor(String, Mapper, boolean)}
+	 * should be preferred for repeated lookups.
+	 * @param descriptor a method or field descriptor
+	 * @param mapper the {@link Mapper} to use for the process
+	 * @return the mapped descriptor
+	 */
+	public static String mapDescriptor(String descriptor, Mapper mapper) {
+		return mapDescriptor(descriptor, name -> {
+			ClassData data = mapper.findClassData(name);
+			return data == null ? null : data.nameMapped;
+		});
+	}
+
+	/**
+	 * Maps any descriptor, replacing its class references through the given function.
+	 * The descriptor is scanned only once, and only the class references that actually
+	 * change are copied: if none do, the same {@link String} is returned.
+	 * @param descriptor a method or field descriptor
+	 * @param classMapper a function returning the mapped internal name of a class,
+	 *                    or null if it should be left as it is
+	 * @return the mapped descriptor
+	 */
+	public static String mapDescriptor(String descriptor, Function<String, String> classMapper) {
+		StringBuilder sb = null;
+		int copied = 0;
+		int length = descriptor.length();
+		for(int i = 0; i < length; i++) {
+			if(descriptor.charAt(i) != 'L')
+				continue;
+			int end = descriptor.indexOf(';', i);
+			if(end < 0)
+				break; //malformed, leave the rest alone
+			String name = descriptor.substring(i + 1, end);
+			String mapped = classMapper.apply(name);
+			if(mapped != null && !mapped.equals(name)) {
+				if(sb == null)
+					sb = new StringBuilder(length + 16);
+				sb.append(descriptor, copied, i + 1).append(mapped);
+				copied = end;
+			}
+			i = end;
 		}
+		if(sb == null)
+			return descriptor;
+		return sb.append(descriptor, copied, length).toString();
+	}
+
+	/**
+	 * Gets the names of the classes a {@link Mapper} knows, sorted, so that they
+	 * can be processed in a deterministic order.
+	 * @param mapper the {@link Mapper}
+	 * @return the sorted plain names of its classes
+	 */
+	public static List<String> getSortedClassNames(Mapper mapper) {
+		List<String> names = new ArrayList<>(mapper.getRawMappings().keySet());
+		names.sort(null);
+		return names;
+	}
+
+	/**
+	 * Gets the methods of a class, sorted by name and then by descriptor.
+	 * @param data the {@link ClassData}
+	 * @return the sorted {@link MethodData}
+	 */
+	public static List<MethodData> getSortedMethods(ClassData data) {
+		List<MethodData> methods = new ArrayList<>(data.getMethods().values());
+		methods.sort(Comparator.<MethodData, String>comparing(m -> m.signature.name)
+			.thenComparing(m -> m.signature.descriptor));
+		return methods;
+	}
+
+	/**
+	 * Gets the fields of a class, sorted by name.
+	 * @param data the {@link ClassData}
+	 * @return the sorted {@link FieldData}
+	 */
+	public static List<FieldData> getSortedFields(ClassData data) {
+		List<FieldData> fields = new ArrayList<>(data.getFields().values());
+		fields.sort(Comparator.comparing(f -> f.name));
+		return fields;
 	}
 }
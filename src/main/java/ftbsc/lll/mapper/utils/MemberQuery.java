@@ -0,0 +1,97 @@
+package ftbsc.lll.mapper.utils;
+
+import java.util.Objects;
+
+/**
+ * A request to resolve a single class member, to be passed to {@link Mapper#resolve(java.util.Collection)}
+ * together with others. Two queries are equal if they ask for the same member.
+ */
+public class MemberQuery {
+	/**
+	 * The plain internal name of the class the member belongs to.
+	 */
+	public final String owner;
+
+	/**
+	 * The plain name of the member.
+	 */
+	public final String name;
+
+	/**
+	 * The descriptor of the method, which may be partial, or null for fields.
+	 */
+	public final String descriptor;
+
+	/**
+	 * The constructor. The owner is normalised once here, rather than on every lookup.
+	 * @param owner the plain name of the class the member belongs to
+	 * @param name the plain name of the member
+	 * @param descriptor the descriptor of the method, or null for fields
+	 */
+	private MemberQuery(String owner, String name, String descriptor) {
+		this.owner = owner.replace('.', '/');
+		this.name = name;
+		this.descriptor = descriptor;
+	}
+
+	/**
+	 * Builds a query for a method.
+	 * @param owner the plain name of the class the method belongs to
+	 * @param name the plain name of the method
+	 * @param descriptor the descriptor of the method, which may be partial
+	 * @return the {@link MemberQuery}
+	 */
+	public static MemberQuery method(String owner, String name, String descriptor) {
+		return new MemberQuery(owner, name, Objects.requireNonNull(descriptor));
+	}
+
+	/**
+	 * Builds a query for a field.
+	 * @param owner the plain name of the class the field belongs to
+	 * @param name the plain name of the field
+	 * @return the {@link MemberQuery}
+	 */
+	public static MemberQuery field(String owner, String name) {
+		return new MemberQuery(owner, name, null);
+	}
+
+	/**
+	 * @return whether this query is for a method
+	 */
+	public boolean isMethod() {
+		return this.descriptor != null;
+	}
+
+	/**
+	 * Checks if two {@link MemberQuery}s ask for the same member.
+	 * @param o the other query
+	 * @return whether they ask for the same member
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if(this == o) return true;
+		if(o == null || getClass() != o.getClass()) return false;
+		MemberQuery query = (MemberQuery) o;
+		return this.owner.equals(query.owner) && this.name.equals(query.name)
+			&& Objects.equals(this.descriptor, query.descriptor);
+	}
+
+	/**
+	 * Calculates a hash based on owner, name and descriptor.
+	 * @return the hash code
+	 */
+	@Override
+	public int hashCode() {
+		return 31 * (31 * this.owner.hashCode() + this.name.hashCode()) + Objects.hashCode(this.descriptor);
+	}
+
+	/**
+	 * @return the query in a human-readable form
+	 */
+	@Override
+	public String toString() {
+		return this.isMethod()
+			? String.format("%s::%s%s", this.owner, this.name, this.descriptor)
+			: String.format("%s.%s", this.owner, this.name);
+	}
+}
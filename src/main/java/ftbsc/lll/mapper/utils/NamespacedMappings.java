@@ -0,0 +1,343 @@
+package ftbsc.lll.mapper.utils;
+
+import ftbsc.lll.exceptions.InvalidResourceException;
+import ftbsc.lll.exceptions.MalformedMappingsException;
+import ftbsc.lll.mapper.MapperProvider;
+import ftbsc.lll.mapper.data.ClassData;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Mappings spanning any number of namespaces, as found in TinyV2 files, read in a
+ * single pass and stored once: each name is kept a single time per namespace.
+ * A {@link Mapper} between any two namespaces can then be obtained through
+ * {@link #project(String, String)}, which is cheap: classes are only materialised
+ * when they're first requested.
+ */
+public class NamespacedMappings {
+	/**
+	 * The prefix of the header of a TinyV2 file.
+	 */
+	private static final String HEADER_PREFIX = "tiny\t2\t";
+
+	/**
+	 * The names of the namespaces, in the order they're declared.
+	 */
+	private final List<String> namespaces;
+
+	/**
+	 * The classes, in the order they're declared.
+	 */
+	private final List<Entry> classes = new ArrayList<>();
+
+	/**
+	 * For each namespace that has been projected from, a {@link Map} tying each
+	 * class name in that namespace to its {@link Entry}.
+	 */
+	private final Map<Integer, Map<String, Entry>> indexes = new ConcurrentHashMap<>();
+
+	/**
+	 * The projections handed out so far, by (from, to) pair.
+	 */
+	private final Map<Integer, Mapper> projections = new ConcurrentHashMap<>();
+
+	/**
+	 * The constructor.
+	 * @param namespaces the names of the namespaces, in order
+	 */
+	private NamespacedMappings(List<String> namespaces) {
+		this.namespaces = Collections.unmodifiableList(namespaces);
+	}
+
+	/**
+	 * Reads a TinyV2 file with any number of namespaces. Parameters, local variables
+	 * and comments are skipped.
+	 * @param lines an {@link Iterator} over the lines to read, header included
+	 * @param ignoreErrors try to ignore errors and keep going
+	 * @param stringPool the {@link StringPool} to canonicalise names with
+	 * @return the {@link NamespacedMappings}
+	 * @throws MalformedMappingsException if an error is encountered and ignoreErrors is false
+	 */
+	public static NamespacedMappings readTinyV2(Iterator<String> lines, boolean ignoreErrors, StringPool stringPool) {
+		String header = lines.hasNext() ? lines.next() : "";
+		String[] headerTokens = header.split("\t", -1);
+		if(!header.startsWith(HEADER_PREFIX) || headerTokens.length < 5)
+			throw new MalformedMappingsException(0, "not a TinyV2 header");
+		List<String> namespaces = new ArrayList<>();
+		for(int i = 3; i < headerTokens.length; i++)
+			namespaces.add(stringPool.intern(headerTokens[i]));
+		NamespacedMappings result = new NamespacedMappings(namespaces);
+
+		int width = namespaces.size();
+		Entry current = null;
+		List<String[]> methods = new ArrayList<>(), fields = new ArrayList<>();
+		for(int i = 1; lines.hasNext(); i++) {
+			String line = lines.next();
+			int depth = 0;
+			while(depth < line.length() && line.charAt(depth) == '\t')
+				depth++;
+			if(depth == line.length())
+				continue; //blank
+			String[] tokens = line.substring(depth).split("\t", -1);
+
+			if(depth == 0 && tokens[0].equals("c") && tokens.length == width + 1) {
+				if(current != null)
+					current.setMembers(methods, fields);
+				current = new Entry(intern(tokens, 1, width, stringPool, null));
+				result.classes.add(current);
+			} else if(depth == 1 && current != null && tokens.length == width + 2
+				&& (tokens[0].equals("m") || tokens[0].equals("f"))) {
+				String[] member = new String[width + 1];
+				member[0] = stringPool.intern(tokens[1]);
+				intern(tokens, 2, width, stringPool, member);
+				(tokens[0].equals("m") ? methods : fields).add(member);
+			} else if(depth >= 2 || (depth == 1 && (current == null || tokens[0].equals("c")))) {
+				continue; //parameters, variables, comments and properties
+			} else if(!ignoreErrors)
+				throw new MalformedMappingsException(i, "wrong number of tab-separated tokens");
+		}
+		if(current != null)
+			current.setMembers(methods, fields);
+		return result;
+	}
+
+	/**
+	 * Interns a run of names, replacing empty ones with the name in the first namespace,
+	 * as TinyV2 leaves a name empty when it's the same.
+	 * @param tokens the tokens of the line
+	 * @param from the index of the first name in the tokens
+	 * @param width the number of names
+	 * @param stringPool the {@link StringPool} to canonicalise names with
+	 * @param target the array to write into, after its first element, or null to create one
+	 * @return the names
+	 */
+	private static String[] intern(String[] tokens, int from, int width, StringPool stringPool, String[] target) {
+		String[] names = target == null ? new String[width] : target;
+		int offset = target == null ? 0 : 1;
+		for(int i = 0; i < width; i++) {
+			String name = tokens[from + i];
+			names[offset + i] = stringPool.intern(name.isEmpty() ? tokens[from] : name);
+		}
+		return names;
+	}
+
+	/**
+	 * Reads a TinyV2 file with any number of namespaces from the given location.
+	 * @param location either a URL or a local path
+	 * @param ignoreErrors try to ignore errors and keep going
+	 * @return the {@link NamespacedMappings}
+	 * @throws InvalidResourceException if provided an invalid resource
+	 * @throws MalformedMappingsException if an error is encountered and ignoreErrors is false
+	 */
+	public static NamespacedMappings load(String location, boolean ignoreErrors) {
+		try(BufferedReader reader = MapperProvider.openFromLocalOrRemote(location)) {
+			return readTinyV2(reader.lines().iterator(), ignoreErrors, new StringPool());
+		} catch(IOException | UncheckedIOException e) {
+			throw new InvalidResourceException(location, e);
+		}
+	}
+
+	/**
+	 * @return the names of the namespaces, in the order they're declared
+	 */
+	public List<String> getNamespaces() {
+		return this.namespaces;
+	}
+
+	/**
+	 * Gets a {@link Mapper} mapping the names of one namespace to those of another.
+	 * Projections are shared: asking again for the same pair returns the same
+	 * {@link Mapper}, and the projection of the opposite pair is its inverse.
+	 * @param from the namespace to map from
+	 * @param to the namespace to map to
+	 * @return the {@link Mapper}
+	 * @throws IllegalArgumentException if either namespace is unknown
+	 */
+	public Mapper project(String from, String to) {
+		return this.project(this.indexOf(from), this.indexOf(to));
+	}
+
+	/**
+	 * Gets a {@link Mapper} mapping the names of one namespace to those of another.
+	 * @param from the index of the namespace to map from
+	 * @param to the index of the namespace to map to
+	 * @return the {@link Mapper}
+	 * @see #project(String, String)
+	 */
+	public Mapper project(int from, int to) {
+		int width = this.namespaces.size();
+		if(from < 0 || from >= width || to < 0 || to >= width)
+			throw new IllegalArgumentException(String.format("Namespace index out of bounds: %d, %d", from, to));
+		Mapper projection = this.projections.get(from * width + to);
+		if(projection != null)
+			return projection;
+		synchronized(this.projections) {
+			projection = this.projections.get(from * width + to);
+			if(projection == null) {
+				projection = new Projection(from, to);
+				this.projections.put(from * width + to, projection);
+				if(from != to) {
+					Mapper inverse = new Projection(to, from);
+					this.projections.put(to * width + from, inverse);
+					Mapper.pair(projection, inverse);
+				}
+			}
+		}
+		return projection;
+	}
+
+	/**
+	 * Finds a namespace by name.
+	 * @param namespace the name of the namespace
+	 * @return its index
+	 * @throws IllegalArgumentException if it's unknown
+	 */
+	private int indexOf(String namespace) {
+		int index = this.namespaces.indexOf(namespace);
+		if(index < 0)
+			throw new IllegalArgumentException(String.format("Unknown namespace %s, available: %s", namespace, this.namespaces));
+		return index;
+	}
+
+	/**
+	 * Gets the index of the class names in the given namespace, building it if needed.
+	 * @param namespace the index of the namespace
+	 * @return a {@link Map} tying each class name in that namespace to its {@link Entry}
+	 */
+	private Map<String, Entry> getIndex(int namespace) {
+		return this.indexes.computeIfAbsent(namespace, n -> {
+			Map<String, Entry> index = new HashMap<>(this.classes.size() * 4 / 3 + 1);
+			for(Entry entry : this.classes)
+				index.put(entry.names[n], entry);
+			return index;
+		});
+	}
+
+	/**
+	 * A class as stored, with its name and its members' names in every namespace.
+	 */
+	private static class Entry {
+		/**
+		 * The names of the class, one per namespace.
+		 */
+		private final String[] names;
+
+		/**
+		 * The methods: each has the descriptor in the first namespace, then its names.
+		 */
+		private String[][] methods;
+
+		/**
+		 * The fields: each has the descriptor in the first namespace, then its names.
+		 */
+		private String[][] fields;
+
+		/**
+		 * The constructor.
+		 * @param names the names of the class, one per namespace
+		 */
+		private Entry(String[] names) {
+			this.names = names;
+		}
+
+		/**
+		 * Sets the members, and empties the given lists so they can be reused.
+		 * @param methods the methods
+		 * @param fields the fields
+		 */
+		private void setMembers(List<String[]> methods, List<String[]> fields) {
+			this.methods = methods.toArray(new String[0][]);
+			this.fields = fields.toArray(new String[0][]);
+			methods.clear();
+			fields.clear();
+		}
+	}
+
+	/**
+	 * A {@link Mapper} between two namespaces, materialising classes on demand.
+	 */
+	private class Projection extends Mapper {
+		/**
+		 * The index of the namespace to map from.
+		 */
+		private final int from;
+
+		/**
+		 * The index of the namespace to map to.
+		 */
+		private final int to;
+
+		/**
+		 * The index of the class names in the namespace to map from.
+		 */
+		private final Map<String, Entry> index;
+
+		/**
+		 * Translates descriptors from the first namespace to the one to map from.
+		 */
+		private final DescriptorCache descriptors;
+
+		/**
+		 * A {@link Map} holding the classes that have been materialised so far.
+		 */
+		private final Map<String, ClassData> loaded = new ConcurrentHashMap<>();
+
+		/**
+		 * The constructor.
+		 * @param from the index of the namespace to map from
+		 * @param to the index of the namespace to map to
+		 */
+		private Projection(int from, int to) {
+			this.from = from;
+			this.to = to;
+			this.index = getIndex(from);
+			Map<String, Entry> primary = getIndex(0);
+			this.descriptors = new DescriptorCache(DESCRIPTOR_CACHE_CAPACITY, descriptor ->
+				MappingUtils.mapDescriptor(descriptor, name -> {
+					Entry entry = primary.get(name);
+					return entry == null ? null : entry.names[from];
+				}));
+		}
+
+		@Override
+		protected ClassData findClassData(String name) {
+			ClassData data = this.loaded.get(name);
+			if(data != null)
+				return data;
+			Entry entry = this.index.get(name);
+			if(entry == null)
+				return null;
+			return this.loaded.computeIfAbsent(name, k -> this.materialise(entry));
+		}
+
+		/**
+		 * Materialises every class. This defeats the purpose of projections,
+		 * and should be avoided whenever possible.
+		 * @return an unmodifiable {@link Map} tying each {@link ClassData} to the class' plain name
+		 */
+		@Override
+		public Map<String, ClassData> getRawMappings() {
+			if(this.loaded.size() != this.index.size())
+				this.index.forEach((name, entry) -> this.loaded.computeIfAbsent(name, k -> this.materialise(entry)));
+			return Collections.unmodifiableMap(this.loaded);
+		}
+
+		/**
+		 * Builds the {@link ClassData} of a class for this pair of namespaces.
+		 * @param entry the stored class
+		 * @return the {@link ClassData}
+		 */
+		private ClassData materialise(Entry entry) {
+			ClassData data = new ClassData(entry.names[this.from], entry.names[this.to]);
+			for(String[] method : entry.methods)
+				data.addMethod(method[1 + this.from], method[1 + this.to], this.descriptors.map(method[0]));
+			for(String[] field : entry.fields)
+				data.addField(field[1 + this.from], field[1 + this.to], this.descriptors.map(field[0]));
+			return data;
+		}
+	}
+}
@@ -0,0 +1,599 @@
+package ftbsc.lll.mapper.utils;
+
+import ftbsc.lll.exceptions.AmbiguousMappingException;
+import ftbsc.lll.mapper.data.ClassData;
+import ftbsc.lll.mapper.data.FieldData;
+import ftbsc.lll.mapper.data.MethodData;
+import ftbsc.lll.mapper.data.MethodSignature;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * An immutable {@link Mapper} which keeps all of its data in direct {@link ByteBuffer}s,
+ * outside of the Java heap, so that even very large mapping sets add next to nothing
+ * to the work of the garbage collector. Classes are found through an open-addressing
+ * hash table of offsets, and members through binary searches over sorted offset tables.
+ * The {@link ClassData}, {@link MethodData} and {@link FieldData} handed out are
+ * short-lived views decoded on demand, which are never retained.
+ * <p>
+ * Strings are encoded as in {@link BinaryMapper}. Each class record holds the plain
+ * and mapped name, then the number of methods followed by their offsets, sorted by
+ * name and descriptor, then the number of fields followed by their offsets, sorted
+ * by name, and finally the methods (name, descriptor, mapped name) and the fields
+ * (name, mapped name, descriptor) themselves.
+ */
+public class OffHeapMapper extends Mapper {
+	/**
+	 * The size of each slot of the index: the hash of the class name, followed by
+	 * the offset of its record plus one, zero meaning the slot is empty.
+	 */
+	private static final int SLOT_SIZE = 8;
+
+	/**
+	 * The class records.
+	 */
+	private final ByteBuffer data;
+
+	/**
+	 * The open-addressing hash table pointing into {@link #data}.
+	 */
+	private final ByteBuffer index;
+
+	/**
+	 * The number of slots in {@link #index} minus one.
+	 */
+	private final int mask;
+
+	/**
+	 * The number of classes.
+	 */
+	private final int size;
+
+	/**
+	 * Whether the inverted mapper has already been built and moved off the heap.
+	 */
+	private volatile boolean invertedBuilt = false;
+
+	/**
+	 * Copies the given {@link Mapper} off the heap. The source is only read, and may
+	 * be discarded afterwards.
+	 * @param mapper the {@link Mapper} to copy
+	 * @throws IllegalArgumentException if a name is too long to be encoded
+	 */
+	public OffHeapMapper(Mapper mapper) {
+		Map<String, ClassData> mappings = mapper.getRawMappings();
+		this.size = mappings.size();
+		int capacity = Integer.highestOneBit(Math.max(2, this.size * 2 - 1)) << 1; //load factor between 0.25 and 0.5
+		this.mask = capacity - 1;
+		this.index = ByteBuffer.allocateDirect(capacity * SLOT_SIZE);
+
+		Output out = new Output(Math.max(1024, this.size * 256));
+		for(Map.Entry<String, ClassData> entry : mappings.entrySet()) {
+			int hash = hash(entry.getKey());
+			int slot = hash & this.mask;
+			while(this.index.getInt(slot * SLOT_SIZE + 4) != 0)
+				slot = (slot + 1) & this.mask;
+			this.index.putInt(slot * SLOT_SIZE, hash);
+			this.index.putInt(slot * SLOT_SIZE + 4, out.position() + 1);
+			writeClass(out, entry.getValue());
+		}
+		this.data = out.trim();
+	}
+
+	/**
+	 * Writes a class record.
+	 * @param out the {@link Output} to write to
+	 * @param data the {@link ClassData} to write
+	 */
+	private static void writeClass(Output out, ClassData data) {
+		List<byte[][]> methods = new ArrayList<>(data.getMethods().size());
+		for(MethodData method : data.getMethods().values())
+			methods.add(new byte[][] { encode(method.signature.name), encode(method.signature.descriptor), encode(method.nameMapped) });
+		methods.sort((a, b) -> {
+			int cmp = BinaryMapper.compareBytes(a[0], b[0]);
+			return cmp != 0 ? cmp : BinaryMapper.compareBytes(a[1], b[1]);
+		});
+		List<byte[][]> fields = new ArrayList<>(data.getFields().size());
+		for(FieldData field : data.getFields().values())
+			fields.add(new byte[][] { encode(field.name), encode(field.nameMapped), encode(field.descriptor) });
+		fields.sort((a, b) -> BinaryMapper.compareBytes(a[0], b[0]));
+
+		out.putString(encode(data.name));
+		out.putString(encode(data.nameMapped));
+		int methodTable = out.position();
+		out.putInt(methods.size());
+		out.skip(methods.size() * 4);
+		int fieldTable = out.position();
+		out.putInt(fields.size());
+		out.skip(fields.size() * 4);
+		for(int i = 0; i < methods.size(); i++) {
+			out.putIntAt(methodTable + 4 + i * 4, out.position());
+			for(byte[] string : methods.get(i))
+				out.putString(string);
+		}
+		for(int i = 0; i < fields.size(); i++) {
+			out.putIntAt(fieldTable + 4 + i * 4, out.position());
+			for(byte[] string : fields.get(i))
+				out.putString(string);
+		}
+	}
+
+	/**
+	 * Encodes a string as UTF-8.
+	 * @param value the string, may be null
+	 * @return its bytes, or null if it was null
+	 * @throws IllegalArgumentException if the string is too long to be encoded
+	 */
+	private static byte[] encode(String value) {
+		if(value == null)
+			return null;
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		if(bytes.length >= BinaryMapper.NULL_STRING)
+			throw new IllegalArgumentException(String.format("String is too long to be stored off-heap: %s", value));
+		return bytes;
+	}
+
+	/**
+	 * Spreads the hash of a class name, the same way when writing and reading.
+	 * @param name the plain internal name
+	 * @return the hash
+	 */
+	private static int hash(String name) {
+		int hash = name.hashCode();
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Finds the record of a class through the index. This doesn't allocate,
+	 * as long as the name is made of ASCII characters.
+	 * @param name the plain internal name of the desired class
+	 * @return the offset of its record, or -1 if it's not there
+	 */
+	private int findRecord(String name) {
+		int hash = hash(name);
+		for(int slot = hash & this.mask;; slot = (slot + 1) & this.mask) {
+			int offset = this.index.getInt(slot * SLOT_SIZE + 4) - 1;
+			if(offset < 0)
+				return -1;
+			if(this.index.getInt(slot * SLOT_SIZE) == hash && compare(this.data, offset, name) == 0)
+				return offset;
+		}
+	}
+
+	@Override
+	protected ClassData findClassData(String name) {
+		int offset = this.findRecord(name);
+		return offset < 0 ? null : new OffHeapClassData(offset);
+	}
+
+	/**
+	 * Gets a read-only view of the "raw mappings", decoding each class as it's reached.
+	 * @return an unmodifiable {@link Map} tying each {@link ClassData} to the class' plain name
+	 */
+	@Override
+	public Map<String, ClassData> getRawMappings() {
+		return new AbstractMap<String, ClassData>() {
+			@Override
+			public ClassData get(Object key) {
+				return key instanceof String ? findClassData((String) key) : null;
+			}
+
+			@Override
+			public boolean containsKey(Object key) {
+				return key instanceof String && findRecord((String) key) >= 0;
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+
+			@Override
+			public Set<Entry<String, ClassData>> entrySet() {
+				return new AbstractSet<Entry<String, ClassData>>() {
+					@Override
+					public Iterator<Entry<String, ClassData>> iterator() {
+						return new Iterator<Entry<String, ClassData>>() {
+							private int next = this.advance(0);
+
+							private int advance(int from) {
+								while(from <= mask && index.getInt(from * SLOT_SIZE + 4) == 0)
+									from++;
+								return from;
+							}
+
+							@Override
+							public boolean hasNext() {
+								return this.next <= mask;
+							}
+
+							@Override
+							public Entry<String, ClassData> next() {
+								if(!this.hasNext())
+									throw new NoSuchElementException();
+								ClassData value = new OffHeapClassData(index.getInt(this.next * SLOT_SIZE + 4) - 1);
+								this.next = this.advance(this.next + 1);
+								return new SimpleImmutableEntry<>(value.name, value);
+							}
+						};
+					}
+
+					@Override
+					public int size() {
+						return size;
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Gets the inverted mapper, which is also kept off the heap. It's built
+	 * through a temporary on-heap copy, which is discarded right away.
+	 * @return the inverted mapper
+	 */
+	@Override
+	public Mapper getInverted() {
+		if(!this.invertedBuilt) {
+			synchronized(this) {
+				if(!this.invertedBuilt) {
+					Mapper reversed = new Mapper();
+					this.getRawMappings().forEach((name, data) ->
+						reversed.getRawMappings().put(data.nameMapped, data.generateReverseMappings(this)));
+					OffHeapMapper inverted = new OffHeapMapper(reversed);
+					pair(this, inverted);
+					inverted.invertedBuilt = true;
+					this.invertedBuilt = true;
+				}
+			}
+		}
+		return super.getInverted();
+	}
+
+	/**
+	 * @return this, as it's already immutable
+	 */
+	@Override
+	public Mapper freeze() {
+		return this;
+	}
+
+	/**
+	 * @return the number of bytes of direct memory used by this mapper
+	 */
+	public long getOffHeapSize() {
+		return (long) this.data.capacity() + this.index.capacity();
+	}
+
+	/**
+	 * Compares the string at the given offset with the given one, as UTF-8 bytes.
+	 * This doesn't allocate, unless the given string contains non-ASCII characters.
+	 * @param buffer the buffer to read from
+	 * @param offset the offset of the string, which must not be null
+	 * @param key the string to compare against
+	 * @return a negative number, zero or a positive number as the string in the buffer
+	 *         is less than, equal to or greater than the key
+	 */
+	private static int compare(ByteBuffer buffer, int offset, String key) {
+		int length = Short.toUnsignedInt(buffer.getShort(offset));
+		int common = Math.min(length, key.length());
+		for(int i = 0; i < common; i++) {
+			char c = key.charAt(i);
+			if(c >= 0x80)
+				return BinaryMapper.compareString(buffer, offset, key.getBytes(StandardCharsets.UTF_8));
+			int cmp = Integer.compare(buffer.get(offset + 2 + i) & 0xFF, c);
+			if(cmp != 0) return cmp;
+		}
+		return Integer.compare(length, key.length());
+	}
+
+	/**
+	 * Checks whether the string at the given offset starts with the given prefix.
+	 * @param buffer the buffer to read from
+	 * @param offset the offset of the string, which must not be null
+	 * @param prefix the prefix
+	 * @return whether the string starts with the prefix
+	 */
+	private static boolean startsWith(ByteBuffer buffer, int offset, String prefix) {
+		int length = Short.toUnsignedInt(buffer.getShort(offset));
+		for(int i = 0; i < prefix.length(); i++) {
+			char c = prefix.charAt(i);
+			if(c >= 0x80)
+				return BinaryMapper.readString(buffer, offset).startsWith(prefix);
+			if(i >= length || buffer.get(offset + 2 + i) != c)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the offset of the string following the one at the given offset.
+	 * @param buffer the buffer to read from
+	 * @param offset the offset of the string
+	 * @return the offset of the next string
+	 */
+	private static int skipString(ByteBuffer buffer, int offset) {
+		int length = Short.toUnsignedInt(buffer.getShort(offset));
+		return offset + 2 + (length == BinaryMapper.NULL_STRING ? 0 : length);
+	}
+
+	/**
+	 * A view over a class record, decoding members as they're requested.
+	 */
+	private class OffHeapClassData extends ClassData {
+		/**
+		 * The offset of the method table: the number of methods, then their offsets.
+		 */
+		private final int methodTable;
+
+		/**
+		 * The offset of the field table: the number of fields, then their offsets.
+		 */
+		private final int fieldTable;
+
+		/**
+		 * The constructor.
+		 * @param offset the offset of the class record
+		 */
+		private OffHeapClassData(int offset) {
+			super(BinaryMapper.readString(data, offset), BinaryMapper.readString(data, skipString(data, offset)),
+				Collections.emptyMap(), Collections.emptyMap());
+			this.methodTable = skipString(data, skipString(data, offset));
+			this.fieldTable = this.methodTable + 4 + data.getInt(this.methodTable) * 4;
+		}
+
+		/**
+		 * Always throws, since an {@link OffHeapMapper} cannot be modified.
+		 * @param name the method name
+		 * @param nameMapped the mapped method name
+		 * @param descriptor the descriptor of the method
+		 * @throws UnsupportedOperationException always
+		 */
+		@Override
+		public void addMethod(String name, String nameMapped, String descriptor) {
+			throw new UnsupportedOperationException("Cannot add methods to an off-heap class!");
+		}
+
+		/**
+		 * Always throws, since an {@link OffHeapMapper} cannot be modified.
+		 * @param plain the name of the field
+		 * @param mapped the mapped name of the field
+		 * @throws UnsupportedOperationException always
+		 */
+		@Override
+		public void addField(String plain, String mapped) {
+			throw new UnsupportedOperationException("Cannot add fields to an off-heap class!");
+		}
+
+		/**
+		 * Always throws, since an {@link OffHeapMapper} cannot be modified.
+		 * @param plain the name of the field
+		 * @param mapped the mapped name of the field
+		 * @param descriptor the plain type descriptor of the field
+		 * @throws UnsupportedOperationException always
+		 */
+		@Override
+		public void addField(String plain, String mapped, String descriptor) {
+			throw new UnsupportedOperationException("Cannot add fields to an off-heap class!");
+		}
+
+		@Override
+		public MethodData findMethod(String methodName, String methodDescriptor) {
+			int count = data.getInt(this.methodTable);
+			int low = 0, high = count;
+			while(low < high) {
+				int middle = (low + high) >>> 1;
+				int offset = this.methodOffset(middle);
+				int cmp = compare(data, offset, methodName);
+				if(cmp == 0)
+					cmp = compare(data, skipString(data, offset), methodDescriptor);
+				if(cmp < 0) low = middle + 1;
+				else high = middle;
+			}
+			int last = low;
+			while(last < count && compare(data, this.methodOffset(last), methodName) == 0
+				&& startsWith(data, skipString(data, this.methodOffset(last)), methodDescriptor))
+				last++;
+			if(last == low)
+				return null;
+			if(last - low == 1)
+				return this.decodeMethod(this.methodOffset(low));
+			List<String> candidates = new ArrayList<>();
+			for(int i = low; i < last; i++) {
+				MethodData candidate = this.decodeMethod(this.methodOffset(i));
+				candidates.add(candidate.signature.name + candidate.signature.descriptor);
+			}
+			String mapping = String.format("%s::%s%s", this.name, methodName, methodDescriptor);
+			throw new AmbiguousMappingException("method", mapping, candidates);
+		}
+
+		@Override
+		public FieldData findField(String fieldName) {
+			int low = 0, high = data.getInt(this.fieldTable) - 1;
+			while(low <= high) {
+				int middle = (low + high) >>> 1;
+				int offset = this.fieldOffset(middle);
+				int cmp = compare(data, offset, fieldName);
+				if(cmp < 0) low = middle + 1;
+				else if(cmp > 0) high = middle - 1;
+				else return this.decodeField(offset);
+			}
+			return null;
+		}
+
+		/**
+		 * Decodes every method. The {@link Map} is built anew at every call.
+		 * @return an unmodifiable {@link Map} tying each {@link MethodSignature} to its {@link MethodData}
+		 */
+		@Override
+		public Map<MethodSignature, MethodData> getMethods() {
+			int count = data.getInt(this.methodTable);
+			Map<MethodSignature, MethodData> methods = new LinkedHashMap<>(count * 4 / 3 + 1);
+			for(int i = 0; i < count; i++) {
+				MethodData method = this.decodeMethod(this.methodOffset(i));
+				methods.put(method.signature, method);
+			}
+			return Collections.unmodifiableMap(methods);
+		}
+
+		/**
+		 * Decodes every field. The {@link Map} is built anew at every call.
+		 * @return an unmodifiable {@link Map} tying each field name to its {@link FieldData}
+		 */
+		@Override
+		public Map<String, FieldData> getFields() {
+			int count = data.getInt(this.fieldTable);
+			Map<String, FieldData> fields = new LinkedHashMap<>(count * 4 / 3 + 1);
+			for(int i = 0; i < count; i++) {
+				FieldData field = this.decodeField(this.fieldOffset(i));
+				fields.put(field.name, field);
+			}
+			return Collections.unmodifiableMap(fields);
+		}
+
+		/**
+		 * @return this, as it's already immutable
+		 */
+		@Override
+		public ClassData freeze() {
+			return this;
+		}
+
+		/**
+		 * @param index the position of a method in the sorted table
+		 * @return the offset of its entry
+		 */
+		private int methodOffset(int index) {
+			return data.getInt(this.methodTable + 4 + index * 4);
+		}
+
+		/**
+		 * @param index the position of a field in the sorted table
+		 * @return the offset of its entry
+		 */
+		private int fieldOffset(int index) {
+			return data.getInt(this.fieldTable + 4 + index * 4);
+		}
+
+		/**
+		 * Decodes a method entry.
+		 * @param offset the offset of the entry
+		 * @return the {@link MethodData}
+		 */
+		private MethodData decodeMethod(int offset) {
+			int descriptor = skipString(data, offset);
+			int mapped = skipString(data, descriptor);
+			return new MethodData(this, BinaryMapper.readString(data, offset),
+				BinaryMapper.readString(data, mapped), BinaryMapper.readString(data, descriptor));
+		}
+
+		/**
+		 * Decodes a field entry.
+		 * @param offset the offset of the entry
+		 * @return the {@link FieldData}
+		 */
+		private FieldData decodeField(int offset) {
+			int mapped = skipString(data, offset);
+			int descriptor = skipString(data, mapped);
+			return new FieldData(this, BinaryMapper.readString(data, offset),
+				BinaryMapper.readString(data, mapped), BinaryMapper.readString(data, descriptor));
+		}
+	}
+
+	/**
+	 * A growable direct buffer used while copying a {@link Mapper} off the heap.
+	 */
+	private static class Output {
+		/**
+		 * The buffer being written, replaced by a larger one when it fills up.
+		 */
+		private ByteBuffer buffer;
+
+		/**
+		 * The constructor.
+		 * @param capacity the initial capacity
+		 */
+		private Output(int capacity) {
+			this.buffer = ByteBuffer.allocateDirect(capacity);
+		}
+
+		/**
+		 * @return the current write position
+		 */
+		private int position() {
+			return this.buffer.position();
+		}
+
+		/**
+		 * Makes sure there's room for the given number of bytes.
+		 * @param bytes the number of bytes about to be written
+		 */
+		private void ensure(int bytes) {
+			if(this.buffer.remaining() >= bytes)
+				return;
+			long required = (long) this.buffer.position() + bytes;
+			long capacity = Math.max(required, (long) this.buffer.capacity() * 2);
+			if(capacity > Integer.MAX_VALUE)
+				throw new IllegalArgumentException("Too much data to be stored off-heap");
+			ByteBuffer grown = ByteBuffer.allocateDirect((int) capacity);
+			this.buffer.flip();
+			grown.put(this.buffer);
+			this.buffer = grown;
+		}
+
+		/**
+		 * Writes an integer.
+		 * @param value the integer
+		 */
+		private void putInt(int value) {
+			this.ensure(4);
+			this.buffer.putInt(value);
+		}
+
+		/**
+		 * Writes an integer at the given position, which must have been written already.
+		 * @param position the position
+		 * @param value the integer
+		 */
+		private void putIntAt(int position, int value) {
+			this.buffer.putInt(position, value);
+		}
+
+		/**
+		 * Reserves the given number of bytes, to be filled later.
+		 * @param bytes the number of bytes
+		 */
+		private void skip(int bytes) {
+			this.ensure(bytes);
+			this.buffer.position(this.buffer.position() + bytes);
+		}
+
+		/**
+		 * Writes a length-prefixed string.
+		 * @param bytes the UTF-8 bytes of the string, or null
+		 */
+		private void putString(byte[] bytes) {
+			if(bytes == null) {
+				this.ensure(2);
+				this.buffer.putShort((short) BinaryMapper.NULL_STRING);
+				return;
+			}
+			this.ensure(2 + bytes.length);
+			this.buffer.putShort((short) bytes.length);
+			this.buffer.put(bytes);
+		}
+
+		/**
+		 * Copies what was written into a buffer of the exact size.
+		 * @return the new buffer
+		 */
+		private ByteBuffer trim() {
+			ByteBuffer trimmed = ByteBuffer.allocateDirect(this.buffer.position());
+			this.buffer.flip();
+			trimmed.put(this.buffer);
+			return trimmed;
+		}
+	}
+}
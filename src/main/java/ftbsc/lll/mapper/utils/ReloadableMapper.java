@@ -0,0 +1,453 @@
+package ftbsc.lll.mapper.utils;
+
+import ftbsc.lll.exceptions.InvalidResourceException;
+import ftbsc.lll.exceptions.MalformedMappingsException;
+import ftbsc.lll.mapper.IBlockMappingFormat;
+import ftbsc.lll.mapper.IMappingFormat;
+import ftbsc.lll.mapper.MapperProvider;
+import ftbsc.lll.mapper.data.ClassData;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * A {@link Mapper} backed by a local mapping file, which can be reloaded while in use.
+ * Once {@link #startWatching() watching}, it reloads on its own whenever the file, or
+ * any local file it depends on (such as the chained mappings of a multimapper), changes.
+ * <p>
+ * Reloading never blocks readers: the new mappings are built on the side and swapped
+ * in all at once, and readers see either the old ones or the new ones, never a mix.
+ * Classes whose mappings did not change keep the same {@link ClassData} instance.
+ * For {@link IBlockMappingFormat}s, only the class blocks whose text changed are parsed
+ * again; other formats, or a change of format, require parsing the whole file.
+ * <p>
+ * The inverted mapper and the descriptor cache are discarded on every change, but
+ * anything else built on top of this mapper, such as a {@link MapperRemapper}, is not
+ * updated: use {@link #addListener(Consumer)} to find out when to rebuild it.
+ */
+public class ReloadableMapper extends Mapper implements Closeable {
+	/**
+	 * How long to wait for more changes before reloading, in milliseconds, since
+	 * editors tend to save a file in multiple steps.
+	 */
+	private static final long DEBOUNCE_MILLIS = 100;
+
+	/**
+	 * The offset basis of the 64-bit FNV-1a hash.
+	 */
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+	/**
+	 * The prime of the 64-bit FNV-1a hash.
+	 */
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	/**
+	 * The path of the mapping file.
+	 */
+	private final Path path;
+
+	/**
+	 * Whether errors should be ignored.
+	 */
+	private final boolean ignoreErrors;
+
+	/**
+	 * The current mappings. The {@link Map} is never modified once published:
+	 * it's replaced as a whole on every reload.
+	 */
+	private volatile Map<String, ClassData> current = Collections.emptyMap();
+
+	/**
+	 * The format the file was last parsed with.
+	 */
+	private IMappingFormat format;
+
+	/**
+	 * A {@link Map} tying each class to the hash of the text of its block, when the
+	 * format is block-based.
+	 */
+	private Map<String, Long> blockHashes = Collections.emptyMap();
+
+	/**
+	 * The files whose changes trigger a reload, as absolute paths.
+	 */
+	private volatile Set<Path> watched = Collections.emptySet();
+
+	/**
+	 * The listeners to notify after each reload.
+	 */
+	private final List<Consumer<Set<String>>> listeners = new CopyOnWriteArrayList<>();
+
+	/**
+	 * The {@link WatchService} in use, or null if not watching.
+	 */
+	private WatchService watchService;
+
+	/**
+	 * The directories registered with the {@link #watchService}.
+	 */
+	private final Set<Path> registered = new HashSet<>();
+
+	/**
+	 * The lock serialising reloads. Readers, and anything else synchronising on this
+	 * {@link Mapper}, are only held up while the new mappings are swapped in.
+	 */
+	private final Object reloadLock = new Object();
+
+	/**
+	 * The error the last reload failed with, or null if it succeeded.
+	 */
+	private volatile Throwable lastError;
+
+	/**
+	 * Loads the mapping file at the given path. It's not watched until
+	 * {@link #startWatching()} is called.
+	 * @param path the path of the file
+	 * @param ignoreErrors try to ignore errors and keep going
+	 * @throws InvalidResourceException if the file could not be read
+	 * @throws MalformedMappingsException if an error is encountered and ignoreErrors is false
+	 */
+	public ReloadableMapper(Path path, boolean ignoreErrors) {
+		this.path = path.toAbsolutePath();
+		this.ignoreErrors = ignoreErrors;
+		this.reload();
+	}
+
+	@Override
+	protected ClassData findClassData(String name) {
+		return this.current.get(name);
+	}
+
+	/**
+	 * @return an unmodifiable {@link Map} tying each {@link ClassData} to the class' plain name
+	 */
+	@Override
+	public Map<String, ClassData> getRawMappings() {
+		return this.current;
+	}
+
+	/**
+	 * Reads the file again, and swaps in whatever changed.
+	 * @return the plain names of the classes that were added, changed or removed
+	 * @throws InvalidResourceException if the file could not be read
+	 * @throws MalformedMappingsException if an error is encountered and ignoreErrors is false
+	 */
+	public Set<String> reload() {
+		synchronized(this.reloadLock) {
+			List<String> lines;
+			try {
+				lines = Files.readAllLines(this.path, StandardCharsets.UTF_8);
+			} catch(IOException e) {
+				throw new InvalidResourceException(this.path.toString(), e);
+			}
+			if(lines.isEmpty())
+				throw new InvalidResourceException(this.path.toString());
+
+			IMappingFormat format = MapperProvider.getMapper(lines.get(0));
+			Map<String, ClassData> old = this.current;
+			Map<String, ClassData> next;
+			if(format instanceof IBlockMappingFormat && format == this.format)
+				next = this.reloadBlocks((IBlockMappingFormat) format, lines, old);
+			else next = this.reloadAll(format, lines, old);
+
+			Set<String> changed = new HashSet<>();
+			next.forEach((name, data) -> {
+				if(old.get(name) != data)
+					changed.add(name);
+			});
+			for(String name : old.keySet())
+				if(!next.containsKey(name))
+					changed.add(name);
+
+			this.format = format;
+			this.watched = this.findWatched(format, lines);
+			if(!changed.isEmpty()) {
+				synchronized(this) {
+					this.current = Collections.unmodifiableMap(next);
+					this.invalidateCaches();
+				}
+				Set<String> view = Collections.unmodifiableSet(changed);
+				for(Consumer<Set<String>> listener : this.listeners)
+					listener.accept(view);
+			}
+			return changed;
+		}
+	}
+
+	/**
+	 * Parses the whole file, then keeps the old instance of every class whose
+	 * mappings did not change.
+	 * @param format the format of the file
+	 * @param lines the lines of the file
+	 * @param old the current mappings
+	 * @return the new mappings
+	 */
+	private Map<String, ClassData> reloadAll(IMappingFormat format, List<String> lines, Map<String, ClassData> old) {
+		Map<String, ClassData> next = new HashMap<>(format.getMapper(lines, this.ignoreErrors).getRawMappings());
+		next.replaceAll((name, data) -> {
+			ClassData previous = old.get(name);
+			return previous != null && previous.hasSameMappings(data) ? previous : data;
+		});
+		this.blockHashes = Collections.emptyMap();
+		if(format instanceof IBlockMappingFormat)
+			this.blockHashes = this.hashBlocks((IBlockMappingFormat) format, lines, null, null);
+		return next;
+	}
+
+	/**
+	 * Splits the file into class blocks, and only parses those whose text changed.
+	 * @param format the format of the file
+	 * @param lines the lines of the file
+	 * @param old the current mappings
+	 * @return the new mappings
+	 */
+	private Map<String, ClassData> reloadBlocks(IBlockMappingFormat format, List<String> lines, Map<String, ClassData> old) {
+		Map<String, ClassData> next = new HashMap<>();
+		Map<String, Long> previousHashes = this.blockHashes;
+		StringPool stringPool = new StringPool();
+		this.blockHashes = this.hashBlocks(format, lines, (name, block) -> {
+			ClassData previous = old.get(name);
+			if(previous != null && block.hash.equals(previousHashes.get(name))) {
+				next.put(name, previous);
+				return;
+			}
+			Mapper parsed = new Mapper();
+			format.parseBlocks(parsed, lines.subList(block.start, block.end).iterator(), block.start, this.ignoreErrors, stringPool);
+			for(ClassData data : parsed.getRawMappings().values())
+				next.put(data.name, previous != null && previous.hasSameMappings(data) ? previous : data);
+		}, stringPool);
+		return next;
+	}
+
+	/**
+	 * A class block within the lines of a file.
+	 */
+	private static class Block {
+		/**
+		 * The index of the first line, inclusive.
+		 */
+		private final int start;
+
+		/**
+		 * The index of the last line, exclusive.
+		 */
+		private final int end;
+
+		/**
+		 * The hash of the text of the block.
+		 */
+		private final Long hash;
+
+		/**
+		 * The constructor.
+		 * @param start the index of the first line, inclusive
+		 * @param end the index of the last line, exclusive
+		 * @param hash the hash of the text of the block
+		 */
+		private Block(int start, int end, long hash) {
+			this.start = start;
+			this.end = end;
+			this.hash = hash;
+		}
+	}
+
+	/**
+	 * Splits the lines into class blocks, hashing each of them. Lines that come
+	 * before the first class line are parsed every time, so that errors are reported.
+	 * @param format the format of the file
+	 * @param lines the lines of the file
+	 * @param visitor called on each block with the name of its class, may be null
+	 * @param stringPool the {@link StringPool} to parse stray lines with, may be null if the visitor is
+	 * @return a {@link Map} tying each class to the hash of its block
+	 */
+	private Map<String, Long> hashBlocks(IBlockMappingFormat format, List<String> lines,
+																			 BlockVisitor visitor, StringPool stringPool) {
+		Map<String, Long> hashes = new HashMap<>();
+		int start = 1; //skip header
+		while(start < lines.size() && !format.isClassLine(lines.get(start)))
+			start++;
+		if(visitor != null && start > 1)
+			format.parseBlocks(new Mapper(), lines.subList(1, start).iterator(), 1, this.ignoreErrors, stringPool);
+
+		while(start < lines.size()) {
+			long hash = FNV_OFFSET;
+			int end = start;
+			do {
+				hash = hash(hash, lines.get(end++));
+			} while(end < lines.size() && !format.isClassLine(lines.get(end)));
+
+			String name = format.getClassName(lines.get(start));
+			if(name != null) {
+				Block block = new Block(start, end, hash);
+				hashes.put(name, block.hash);
+				if(visitor != null)
+					visitor.visit(name, block);
+			} else if(visitor != null) //let the format report it
+				format.parseBlocks(new Mapper(), lines.subList(start, end).iterator(), start, this.ignoreErrors, stringPool);
+			start = end;
+		}
+		return hashes;
+	}
+
+	/**
+	 * Called on each class block by {@link #hashBlocks(IBlockMappingFormat, List, BlockVisitor, StringPool)}.
+	 */
+	private interface BlockVisitor {
+		/**
+		 * Visits a class block.
+		 * @param name the plain name of the class
+		 * @param block the {@link Block}
+		 */
+		void visit(String name, Block block);
+	}
+
+	/**
+	 * Adds a line to a 64-bit FNV-1a hash.
+	 * @param hash the hash so far
+	 * @param line the line
+	 * @return the updated hash
+	 */
+	private static long hash(long hash, String line) {
+		for(int i = 0; i < line.length(); i++)
+			hash = (hash ^ line.charAt(i)) * FNV_PRIME;
+		return (hash ^ '\n') * FNV_PRIME;
+	}
+
+	/**
+	 * Finds the files to watch: the mapping file itself and any local file it depends on.
+	 * @param format the format of the file
+	 * @param lines the lines of the file
+	 * @return the absolute paths of the files to watch
+	 */
+	private Set<Path> findWatched(IMappingFormat format, List<String> lines) {
+		Set<Path> paths = new HashSet<>();
+		paths.add(this.path);
+		for(String location : format.getDependencies(lines)) {
+			try {
+				Path dependency = Paths.get(location).toAbsolutePath();
+				if(Files.isRegularFile(dependency))
+					paths.add(dependency);
+			} catch(InvalidPathException ignored) {} //remote, can't be watched
+		}
+		return paths;
+	}
+
+	/**
+	 * Starts watching the files on a daemon thread. Failed reloads leave the current
+	 * mappings in place, and can be inspected through {@link #getLastError()}.
+	 * Calling this again while already watching does nothing.
+	 * @throws IOException if the {@link WatchService} could not be created
+	 */
+	public synchronized void startWatching() throws IOException {
+		if(this.watchService != null)
+			return;
+		this.watchService = this.path.getFileSystem().newWatchService();
+		this.registerDirectories();
+		Thread thread = new Thread(this::watchLoop, "mapping-watcher-" + this.path.getFileName());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Registers the directories of every watched file, unless already registered.
+	 * @throws IOException if a directory could not be registered
+	 */
+	private synchronized void registerDirectories() throws IOException {
+		if(this.watchService == null)
+			return;
+		for(Path file : this.watched) {
+			Path directory = file.getParent();
+			if(directory != null && this.registered.add(directory))
+				directory.register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY);
+		}
+	}
+
+	/**
+	 * Waits for changes to the watched files, and reloads when they happen.
+	 */
+	private void watchLoop() {
+		WatchService service = this.watchService;
+		try {
+			while(true) {
+				WatchKey key = service.take();
+				boolean relevant = false;
+				do {
+					relevant |= this.isRelevant(key);
+					key.reset();
+				} while((key = service.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null);
+				if(!relevant)
+					continue;
+				try {
+					this.reload();
+					this.registerDirectories();
+					this.lastError = null;
+				} catch(RuntimeException | IOException e) {
+					this.lastError = e;
+				}
+			}
+		} catch(InterruptedException | ClosedWatchServiceException e) {
+			//closed, stop watching
+		}
+	}
+
+	/**
+	 * Checks whether a {@link WatchKey} holds events about a watched file.
+	 * @param key the {@link WatchKey}
+	 * @return whether a reload is needed
+	 */
+	private boolean isRelevant(WatchKey key) {
+		Path directory = (Path) key.watchable();
+		Set<Path> watched = this.watched;
+		for(WatchEvent<?> event : key.pollEvents()) {
+			if(event.kind() == StandardWatchEventKinds.OVERFLOW)
+				return true;
+			if(watched.contains(directory.resolve((Path) event.context())))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Adds a listener, which will be called after every reload that changed something
+	 * with the plain names of the classes that were added, changed or removed.
+	 * @param listener the listener
+	 */
+	public void addListener(Consumer<Set<String>> listener) {
+		this.listeners.add(listener);
+	}
+
+	/**
+	 * @return the files whose changes trigger a reload
+	 */
+	public Set<Path> getWatchedFiles() {
+		return Collections.unmodifiableSet(this.watched);
+	}
+
+	/**
+	 * @return the error the last automatic reload failed with, or null if it succeeded
+	 */
+	public Throwable getLastError() {
+		return this.lastError;
+	}
+
+	/**
+	 * Stops watching the files. The mapper keeps working with the mappings it has.
+	 * @throws IOException if the {@link WatchService} could not be closed
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if(this.watchService != null) {
+			this.watchService.close();
+			this.watchService = null;
+			this.registered.clear();
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package ftbsc.lll.mapper.utils;
+
+import ftbsc.lll.exceptions.AmbiguousMappingException;
+import ftbsc.lll.mapper.data.ClassData;
+import ftbsc.lll.mapper.data.FieldData;
+import ftbsc.lll.mapper.data.MethodData;
+
+import java.util.*;
+
+/**
+ * The outcome of resolving a batch of {@link MemberQuery}s through
+ * {@link Mapper#resolve(Collection)}. Every query ends up in exactly one
+ * of the resolved, missing or ambiguous groups.
+ */
+public class ResolvedMembers {
+	/**
+	 * A {@link Map} tying each owner that was found to its {@link ClassData}.
+	 */
+	private final Map<String, ClassData> owners = new HashMap<>();
+
+	/**
+	 * A {@link Map} tying each resolved method query to its {@link MethodData}.
+	 */
+	private final Map<MemberQuery, MethodData> methods = new HashMap<>();
+
+	/**
+	 * A {@link Map} tying each resolved field query to its {@link FieldData}.
+	 */
+	private final Map<MemberQuery, FieldData> fields = new HashMap<>();
+
+	/**
+	 * The queries for which no mapping was found, in the order they were resolved.
+	 */
+	private final List<MemberQuery> missing = new ArrayList<>();
+
+	/**
+	 * A {@link Map} tying each query whose partial descriptor matched more than one
+	 * method to the exception describing the candidates.
+	 */
+	private final Map<MemberQuery, AmbiguousMappingException> ambiguous = new HashMap<>();
+
+	/**
+	 * Records an owner that was found.
+	 * @param data its {@link ClassData}
+	 */
+	void addOwner(ClassData data) {
+		this.owners.put(data.name, data);
+	}
+
+	/**
+	 * Records a resolved method.
+	 * @param query the query
+	 * @param data the {@link MethodData} it resolved to
+	 */
+	void addMethod(MemberQuery query, MethodData data) {
+		this.methods.put(query, data);
+	}
+
+	/**
+	 * Records a resolved field.
+	 * @param query the query
+	 * @param data the {@link FieldData} it resolved to
+	 */
+	void addField(MemberQuery query, FieldData data) {
+		this.fields.put(query, data);
+	}
+
+	/**
+	 * Records a query for which no mapping was found.
+	 * @param query the query
+	 */
+	void addMissing(MemberQuery query) {
+		this.missing.add(query);
+	}
+
+	/**
+	 * Records a query which matched more than one method.
+	 * @param query the query
+	 * @param e the exception describing the candidates
+	 */
+	void addAmbiguous(MemberQuery query, AmbiguousMappingException e) {
+		this.ambiguous.put(query, e);
+	}
+
+	/**
+	 * Gets the {@link ClassData} of an owner that was part of the batch.
+	 * @param owner the plain internal name of the class
+	 * @return its {@link ClassData}, or null if it wasn't found
+	 */
+	public ClassData getOwner(String owner) {
+		return this.owners.get(owner.replace('.', '/'));
+	}
+
+	/**
+	 * Gets the result of a method query.
+	 * @param query the query
+	 * @return the {@link MethodData}, or null if it wasn't resolved
+	 */
+	public MethodData getMethod(MemberQuery query) {
+		return this.methods.get(query);
+	}
+
+	/**
+	 * Gets the result of a field query.
+	 * @param query the query
+	 * @return the {@link FieldData}, or null if it wasn't resolved
+	 */
+	public FieldData getField(MemberQuery query) {
+		return this.fields.get(query);
+	}
+
+	/**
+	 * @return an unmodifiable {@link Map} tying each resolved method query to its {@link MethodData}
+	 */
+	public Map<MemberQuery, MethodData> getMethods() {
+		return Collections.unmodifiableMap(this.methods);
+	}
+
+	/**
+	 * @return an unmodifiable {@link Map} tying each resolved field query to its {@link FieldData}
+	 */
+	public Map<MemberQuery, FieldData> getFields() {
+		return Collections.unmodifiableMap(this.fields);
+	}
+
+	/**
+	 * @return an unmodifiable {@link List} of the queries for which no mapping was found
+	 */
+	public List<MemberQuery> getMissing() {
+		return Collections.unmodifiableList(this.missing);
+	}
+
+	/**
+	 * @return an unmodifiable {@link Map} tying each ambiguous query to the exception describing it
+	 */
+	public Map<MemberQuery, AmbiguousMappingException> getAmbiguous() {
+		return Collections.unmodifiableMap(this.ambiguous);
+	}
+
+	/**
+	 * @return whether every query was resolved
+	 */
+	public boolean isComplete() {
+		return this.missing.isEmpty() && this.ambiguous.isEmpty();
+	}
+}
@@ -0,0 +1,388 @@
+package ftbsc.lll.mapper.utils;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * A persistent on-disk cache for remote resources, keyed by URL.
+ * Cached entries are revalidated with the server through conditional requests
+ * (ETag and Last-Modified), so unchanged resources are never downloaded twice.
+ * Each entry records its size and modification time, and an entry whose file no
+ * longer matches them is treated as missing. It also records the SHA-256 hash of its
+ * content, computed while downloading, which {@link #verify(URL)} checks on demand.
+ * In offline mode, the network is never touched. Once the cache grows past its maximum
+ * size, the least recently used entries are evicted.
+ * Only HTTP(S) resources are cached: anything else is opened directly.
+ */
+public class ResourceCache {
+	/**
+	 * The timeout for connecting and reading, in milliseconds.
+	 */
+	private static final int TIMEOUT = 10_000;
+
+	/**
+	 * The directory holding the cached resources.
+	 */
+	private final Path directory;
+
+	/**
+	 * The maximum total size of the cached resources, in bytes.
+	 */
+	private final long maxSize;
+
+	/**
+	 * Whether the network should be avoided altogether.
+	 */
+	private volatile boolean offline;
+
+	/**
+	 * The last stamp given to an entry being used, in nanoseconds.
+	 */
+	private final AtomicLong clock = new AtomicLong();
+
+	/**
+	 * The constructor.
+	 * @param directory the directory to store the cached resources in, created if missing
+	 * @param maxSize the maximum total size of the cached resources, in bytes
+	 * @param offline whether the network should be avoided altogether
+	 * @throws IOException if the directory could not be created
+	 */
+	public ResourceCache(Path directory, long maxSize, boolean offline) throws IOException {
+		this.directory = Files.createDirectories(directory);
+		this.maxSize = maxSize;
+		this.offline = offline;
+	}
+
+	/**
+	 * @return whether the network is being avoided altogether
+	 */
+	public boolean isOffline() {
+		return this.offline;
+	}
+
+	/**
+	 * Sets whether the network should be avoided altogether. While offline,
+	 * only resources that were already cached can be opened.
+	 * @param offline the new value
+	 */
+	public void setOffline(boolean offline) {
+		this.offline = offline;
+	}
+
+	/**
+	 * Opens a resource, serving it from the cache whenever possible.
+	 * If the server can't be reached, a cached copy is used even if it may be stale.
+	 * @param url the URL of the resource
+	 * @return an {@link InputStream} over the resource, which the caller should close
+	 * @throws IOException if the resource is neither reachable nor cached
+	 */
+	public InputStream open(URL url) throws IOException {
+		String protocol = url.getProtocol();
+		if(!protocol.equals("http") && !protocol.equals("https"))
+			return url.openStream();
+
+		Path data = this.dataOf(url);
+		Path metadataFile = metadataOf(data);
+		Properties metadata = readMetadata(metadataFile);
+		boolean cached = metadata != null && isValid(data, metadata);
+
+		if(this.offline) {
+			if(!cached)
+				throw new IOException(String.format("Resource %s is not cached and the cache is offline", url));
+			return this.serve(data, metadataFile);
+		}
+
+		try {
+			HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+			connection.setConnectTimeout(TIMEOUT);
+			connection.setReadTimeout(TIMEOUT);
+			if(cached) {
+				if(metadata.getProperty("etag") != null)
+					connection.setRequestProperty("If-None-Match", metadata.getProperty("etag"));
+				if(metadata.getProperty("lastModified") != null)
+					connection.setRequestProperty("If-Modified-Since", metadata.getProperty("lastModified"));
+			}
+
+			int status = connection.getResponseCode();
+			if(status == HttpURLConnection.HTTP_NOT_MODIFIED && cached) {
+				connection.disconnect();
+				return this.serve(data, metadataFile);
+			} else if(status != HttpURLConnection.HTTP_OK) {
+				connection.disconnect();
+				throw new IOException(String.format("Unexpected response %d for %s", status, url));
+			}
+
+			this.download(url, connection, data, metadataFile);
+			this.evict(data);
+			return this.serve(data, metadataFile);
+		} catch(IOException e) {
+			if(cached)
+				return this.serve(data, metadataFile);
+			throw e;
+		}
+	}
+
+	/**
+	 * Checks the cached copy of a resource against the SHA-256 hash recorded when it
+	 * was downloaded, evicting it if it doesn't match. This reads the whole entry, so
+	 * unlike the size and modification time it's not checked on every {@link #open(URL)}.
+	 * @param url the URL of the resource
+	 * @return whether a cached copy exists and matches its hash
+	 * @throws IOException if the cached copy could not be read
+	 */
+	public synchronized boolean verify(URL url) throws IOException {
+		Path data = this.dataOf(url);
+		Path metadataFile = metadataOf(data);
+		Properties metadata = readMetadata(metadataFile);
+		if(metadata == null || !isValid(data, metadata))
+			return false;
+
+		MessageDigest digest = newDigest();
+		try(InputStream in = new DigestInputStream(Files.newInputStream(data), digest)) {
+			byte[] buffer = new byte[8192];
+			while(in.read(buffer) != -1);
+		}
+		if(toHex(digest.digest()).equals(metadata.getProperty("sha256")))
+			return true;
+		Files.deleteIfExists(metadataFile);
+		Files.deleteIfExists(data);
+		return false;
+	}
+
+	/**
+	 * Downloads a resource into the cache. Both the data and the metadata are first
+	 * written to temporary files, which are then moved in place, metadata first: readers
+	 * never see a partial download, and data is never paired with metadata that doesn't
+	 * describe it, since the recorded size and modification time would not match.
+	 * @param url the URL of the resource
+	 * @param connection the open connection to the server
+	 * @param data the path of the cached data
+	 * @param metadataFile the path of the metadata
+	 * @throws IOException if something goes wrong while downloading
+	 */
+	private void download(URL url, URLConnection connection, Path data, Path metadataFile) throws IOException {
+		Path temp = Files.createTempFile(this.directory, "download", ".tmp");
+		try {
+			MessageDigest digest = newDigest();
+			try(InputStream in = new DigestInputStream(connection.getInputStream(), digest)) {
+				Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+			}
+
+			Properties metadata = new Properties();
+			metadata.setProperty("url", url.toString());
+			metadata.setProperty("sha256", toHex(digest.digest()));
+			metadata.setProperty("size", Long.toString(Files.size(temp)));
+			metadata.setProperty("modified", Long.toString(Files.getLastModifiedTime(temp).toMillis()));
+			metadata.setProperty("lastUsed", Long.toString(this.tick()));
+			if(connection.getHeaderField("ETag") != null)
+				metadata.setProperty("etag", connection.getHeaderField("ETag"));
+			if(connection.getHeaderField("Last-Modified") != null)
+				metadata.setProperty("lastModified", connection.getHeaderField("Last-Modified"));
+			this.writeMetadata(metadata, metadataFile);
+			Files.move(temp, data, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Opens a cached resource, marking it as recently used.
+	 * @param data the path of the cached data
+	 * @param metadataFile the path of the metadata
+	 * @return an {@link InputStream} over it
+	 * @throws IOException if it could not be opened
+	 */
+	private InputStream serve(Path data, Path metadataFile) throws IOException {
+		InputStream in = Files.newInputStream(data);
+		this.markUsed(metadataFile);
+		return in;
+	}
+
+	/**
+	 * Stamps the metadata of a cached resource with the current value of the clock.
+	 * Recency is recorded in the metadata rather than in file times, as the modification
+	 * time of the data is part of what validates it, and file times may be too coarse
+	 * to tell apart entries used in quick succession.
+	 * @param metadataFile the path of the metadata
+	 */
+	private synchronized void markUsed(Path metadataFile) {
+		Properties metadata = readMetadata(metadataFile);
+		if(metadata == null)
+			return; //evicted meanwhile, the open stream still works
+		metadata.setProperty("lastUsed", Long.toString(this.tick()));
+		try {
+			this.writeMetadata(metadata, metadataFile);
+		} catch(IOException ignored) {} //only recency is lost
+	}
+
+	/**
+	 * Advances the clock entries are stamped with when used. It's strictly increasing
+	 * within this instance, and follows the wall clock otherwise, so that stamps from
+	 * other instances sharing the directory remain comparable.
+	 * @return the new stamp, in nanoseconds
+	 */
+	private long tick() {
+		long now = System.currentTimeMillis() * 1_000_000L;
+		return this.clock.updateAndGet(last -> Math.max(last + 1, now));
+	}
+
+	/**
+	 * Writes the metadata of a cached resource to a temporary file, then moves it in place.
+	 * @param metadata the metadata
+	 * @param metadataFile the path of the metadata
+	 * @throws IOException if something goes wrong while writing
+	 */
+	private void writeMetadata(Properties metadata, Path metadataFile) throws IOException {
+		Path temp = Files.createTempFile(this.directory, "metadata", ".tmp");
+		try {
+			try(OutputStream out = Files.newOutputStream(temp)) {
+				metadata.store(out, null);
+			}
+			Files.move(temp, metadataFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Checks whether a cached resource exists and still has the size and modification
+	 * time recorded when it was downloaded. Its content is not hashed again, as that is
+	 * left to {@link #verify(URL)}. Entries that don't match are treated as missing, and
+	 * are left to be replaced by the next download.
+	 * @param data the path of the cached data
+	 * @param metadata its metadata
+	 * @return whether it can be used
+	 */
+	private static boolean isValid(Path data, Properties metadata) {
+		try {
+			return Files.isRegularFile(data)
+				&& Long.toString(Files.size(data)).equals(metadata.getProperty("size"))
+				&& Long.toString(Files.getLastModifiedTime(data).toMillis()).equals(metadata.getProperty("modified"));
+		} catch(IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Evicts the least recently used entries until the cache fits its maximum size.
+	 * @param keep the path of an entry that must not be evicted
+	 * @throws IOException if the directory could not be listed
+	 */
+	private synchronized void evict(Path keep) throws IOException {
+		List<Path> entries = new ArrayList<>();
+		Map<Path, Long> stamps = new HashMap<>();
+		long total = 0;
+		try(Stream<Path> files = Files.list(this.directory)) {
+			for(Path file : (Iterable<Path>) files::iterator) {
+				if(file.getFileName().toString().endsWith(".data")) {
+					entries.add(file);
+					stamps.put(file, lastUsed(metadataOf(file)));
+					total += Files.size(file);
+				}
+			}
+		}
+
+		entries.sort(Comparator.comparing(stamps::get));
+		for(Path entry : entries) {
+			if(total <= this.maxSize)
+				break;
+			if(entry.equals(keep))
+				continue;
+			total -= Files.size(entry);
+			Files.deleteIfExists(metadataOf(entry));
+			Files.deleteIfExists(entry);
+		}
+	}
+
+	/**
+	 * @param url the URL of a resource
+	 * @return the path its data is cached at
+	 */
+	private Path dataOf(URL url) {
+		return this.directory.resolve(hash(url.toString().getBytes(StandardCharsets.UTF_8)) + ".data");
+	}
+
+	/**
+	 * @param data the path of the cached data
+	 * @return the path of its metadata
+	 */
+	private static Path metadataOf(Path data) {
+		String name = data.getFileName().toString();
+		return data.resolveSibling(name.substring(0, name.length() - 5) + ".properties");
+	}
+
+	/**
+	 * @param metadataFile the path of the metadata of a cached resource
+	 * @return the stamp of the last time it was used, or 0 if it's unknown
+	 */
+	private static long lastUsed(Path metadataFile) {
+		Properties metadata = readMetadata(metadataFile);
+		try {
+			return metadata == null ? 0 : Long.parseLong(metadata.getProperty("lastUsed", "0"));
+		} catch(NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Reads the metadata of a cached resource.
+	 * @param metadataFile the path of the metadata
+	 * @return the metadata, or null if it's missing or unreadable
+	 */
+	private static Properties readMetadata(Path metadataFile) {
+		if(!Files.isRegularFile(metadataFile))
+			return null;
+		try(InputStream in = Files.newInputStream(metadataFile)) {
+			Properties metadata = new Properties();
+			metadata.load(in);
+			return metadata;
+		} catch(IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return a new SHA-256 {@link MessageDigest}
+	 */
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch(NoSuchAlgorithmException e) {
+			throw new RuntimeException(e); //every JVM is required to support it
+		}
+	}
+
+	/**
+	 * @param bytes the data to hash
+	 * @return the hex-encoded SHA-256 hash of the data
+	 */
+	private static String hash(byte[] bytes) {
+		return toHex(newDigest().digest(bytes));
+	}
+
+	/**
+	 * @param bytes the bytes to encode
+	 * @return the bytes, encoded as a lowercase hex string
+	 */
+	private static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for(byte b : bytes)
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		return sb.toString();
+	}
+}
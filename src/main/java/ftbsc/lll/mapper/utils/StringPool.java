@@ -0,0 +1,116 @@
+package ftbsc.lll.mapper.utils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A pool of canonical {@link String} instances, used while parsing to make sure
+ * that names and descriptors which appear many times in a mapping file (such
+ * as owners and common descriptors) are only retained once.
+ * Unlike {@link String#intern()}, it's scoped to whoever holds it: once parsing
+ * is done and the pool is discarded, nothing is kept around. It's thread-safe,
+ * so the same pool may be shared across parallel parsers.
+ */
+public class StringPool {
+	/**
+	 * The estimated size in bytes of a {@link String} object and its backing
+	 * array, excluding the characters themselves.
+	 */
+	private static final int STRING_OVERHEAD = 40;
+
+	/**
+	 * A {@link Map} tying each string to its canonical instance.
+	 */
+	private final Map<String, String> pool = new ConcurrentHashMap<>();
+
+	/**
+	 * The total number of strings passed through the pool.
+	 */
+	private final LongAdder requests = new LongAdder();
+
+	/**
+	 * The number of strings that were already in the pool.
+	 */
+	private final LongAdder hits = new LongAdder();
+
+	/**
+	 * The estimated amount of bytes that would have been retained by the duplicates.
+	 */
+	private final LongAdder savedBytes = new LongAdder();
+
+	/**
+	 * Gets the canonical instance of a string, adding it to the pool if it's new.
+	 * @param value the string, may be null
+	 * @return the canonical instance, or null if the string was null
+	 */
+	public String intern(String value) {
+		if(value == null)
+			return null;
+		this.requests.increment();
+		String canonical = this.pool.putIfAbsent(value, value);
+		if(canonical == null)
+			return value;
+		this.hits.increment();
+		this.savedBytes.add(estimateSize(value));
+		return canonical;
+	}
+
+	/**
+	 * @return the total number of strings passed through the pool
+	 */
+	public long getRequests() {
+		return this.requests.sum();
+	}
+
+	/**
+	 * @return the number of strings that were replaced by a canonical instance
+	 */
+	public long getHits() {
+		return this.hits.sum();
+	}
+
+	/**
+	 * @return the number of distinct strings in the pool
+	 */
+	public int getUniqueCount() {
+		return this.pool.size();
+	}
+
+	/**
+	 * @return the estimated amount of bytes retained by the distinct strings in the pool
+	 */
+	public long getEstimatedRetainedBytes() {
+		long total = 0;
+		for(String value : this.pool.keySet())
+			total += estimateSize(value);
+		return total;
+	}
+
+	/**
+	 * @return the estimated amount of bytes saved by not retaining the duplicates
+	 */
+	public long getEstimatedSavedBytes() {
+		return this.savedBytes.sum();
+	}
+
+	/**
+	 * Estimates the retained size of a string, assuming two bytes per character.
+	 * @param value the string
+	 * @return the estimated size in bytes
+	 */
+	private static long estimateSize(String value) {
+		return STRING_OVERHEAD + 2L * value.length();
+	}
+
+	/**
+	 * Summarises the memory statistics of the pool.
+	 * @return a human-readable summary
+	 */
+	@Override
+	public String toString() {
+		return String.format("StringPool[requests=%d, hits=%d, unique=%d, retained~%d bytes, saved~%d bytes]",
+			this.getRequests(), this.getHits(), this.getUniqueCount(),
+			this.getEstimatedRetainedBytes(), this.getEstimatedSavedBytes());
+	}
+}
@@ -0,0 +1,458 @@
+package ftbsc.lll.mapper.utils;
+
+import ftbsc.lll.exceptions.AmbiguousMappingException;
+import ftbsc.lll.exceptions.InvalidResourceException;
+import ftbsc.lll.exceptions.MalformedMappingsException;
+import ftbsc.lll.mapper.MapperProvider;
+import ftbsc.lll.mapper.data.ClassData;
+import ftbsc.lll.mapper.data.FieldData;
+import ftbsc.lll.mapper.data.MethodData;
+import ftbsc.lll.mapper.data.MethodSignature;
+
+import java.util.*;
+
+/**
+ * A repository of several versions of the same mappings, such as those of neighbouring
+ * game releases, which stores a base {@link Mapper} once and every other version as its
+ * differences from it. Each version is exposed as an ordinary {@link Mapper}, whose
+ * lookups fall through to the base for whatever didn't change.
+ * <p>
+ * Classes whose mappings are identical to the base are shared as they are. Classes that
+ * differ only store the members that were added, changed or removed, and classes that
+ * were removed are simply marked as such. Changed classes that are identical across
+ * versions are stored only once, so memory grows with the differences between versions
+ * rather than with their number.
+ */
+public class VersionedMappings {
+	/**
+	 * The name of the base version.
+	 */
+	private final String baseVersion;
+
+	/**
+	 * The base {@link Mapper}, which the other versions are compared to.
+	 */
+	private final Mapper base;
+
+	/**
+	 * The {@link StringPool} shared by every version loaded through {@link #load(String, String)}.
+	 */
+	private final StringPool stringPool = new StringPool();
+
+	/**
+	 * A {@link Map} tying each version to its {@link Mapper}, in the order they were added.
+	 */
+	private final Map<String, Mapper> versions = new LinkedHashMap<>();
+
+	/**
+	 * The distinct variants of each class which differ from the base, used to share
+	 * them across versions.
+	 */
+	private final Map<String, List<ClassData>> variants = new HashMap<>();
+
+	/**
+	 * The constructor.
+	 * @param baseVersion the name of the base version
+	 * @param base the {@link Mapper} of the base version
+	 */
+	public VersionedMappings(String baseVersion, Mapper base) {
+		this.baseVersion = baseVersion;
+		this.base = base;
+		this.versions.put(baseVersion, base);
+	}
+
+	/**
+	 * Adds a version, comparing it to the base. Only the differences are kept, so the
+	 * given {@link Mapper} may be discarded afterwards.
+	 * @param version the name of the version
+	 * @param mapper the full {@link Mapper} of the version
+	 * @return the {@link Mapper} for the version, sharing what it can with the base
+	 * @throws IllegalArgumentException if a version with the same name was already added
+	 */
+	public synchronized Mapper addVersion(String version, Mapper mapper) {
+		if(this.versions.containsKey(version))
+			throw new IllegalArgumentException(String.format("Version %s was already added", version));
+		Map<String, ClassData> changed = new HashMap<>();
+		Set<String> removed = new HashSet<>();
+		Map<String, ClassData> mappings = mapper.getRawMappings();
+		mappings.forEach((name, data) -> {
+			ClassData shared = this.base.findClassData(name);
+			if(shared != null && shared.hasSameMappings(data))
+				return;
+			changed.put(name, this.share(shared == null ? data : OverlayClassData.of(shared, data)));
+		});
+		this.base.getRawMappings().keySet().forEach(name -> {
+			if(!mappings.containsKey(name))
+				removed.add(name);
+		});
+		Mapper result = new DeltaMapper(this.base, changed, removed);
+		this.versions.put(version, result);
+		return result;
+	}
+
+	/**
+	 * Loads a version from either a URL or a local path, and adds it. All versions
+	 * loaded this way share their names through a single {@link StringPool}.
+	 * @param version the name of the version
+	 * @param location either a URL or a local path
+	 * @return the {@link Mapper} for the version
+	 * @throws InvalidResourceException if provided an invalid resource
+	 * @throws MalformedMappingsException if the mappings are malformed
+	 * @see #addVersion(String, Mapper)
+	 */
+	public Mapper load(String version, String location) {
+		return this.addVersion(version, MapperProvider.loadMapper(location, false, this.stringPool));
+	}
+
+	/**
+	 * Returns a variant of a class that was already stored for another version if
+	 * there's an identical one, or stores and returns the given one otherwise.
+	 * @param data the {@link ClassData} differing from the base
+	 * @return the {@link ClassData} to use
+	 */
+	private ClassData share(ClassData data) {
+		List<ClassData> known = this.variants.computeIfAbsent(data.name, k -> new ArrayList<>(1));
+		for(ClassData variant : known)
+			if(variant.hasSameMappings(data))
+				return variant;
+		known.add(data);
+		return data;
+	}
+
+	/**
+	 * Gets the {@link Mapper} for a version.
+	 * @param version the name of the version
+	 * @return the {@link Mapper}
+	 * @throws IllegalArgumentException if the version is unknown
+	 */
+	public synchronized Mapper getVersion(String version) {
+		Mapper mapper = this.versions.get(version);
+		if(mapper == null)
+			throw new IllegalArgumentException(String.format("Unknown version %s, available: %s", version, this.versions.keySet()));
+		return mapper;
+	}
+
+	/**
+	 * @return the name of the base version
+	 */
+	public String getBaseVersion() {
+		return this.baseVersion;
+	}
+
+	/**
+	 * @return the names of the versions, in the order they were added, base included
+	 */
+	public synchronized List<String> getVersions() {
+		return new ArrayList<>(this.versions.keySet());
+	}
+
+	/**
+	 * Lists the classes of a version which are not shared with the base.
+	 * @param version the name of the version
+	 * @return the plain names of the classes that were added, changed or removed
+	 * @throws IllegalArgumentException if the version is unknown
+	 */
+	public Set<String> getChangedClasses(String version) {
+		Mapper mapper = this.getVersion(version);
+		if(!(mapper instanceof DeltaMapper))
+			return Collections.emptySet();
+		DeltaMapper delta = (DeltaMapper) mapper;
+		Set<String> names = new HashSet<>(delta.changed.keySet());
+		names.addAll(delta.removed);
+		return Collections.unmodifiableSet(names);
+	}
+
+	/**
+	 * A {@link Mapper} made of a base and its differences from it.
+	 */
+	private static class DeltaMapper extends Mapper {
+		/**
+		 * The base {@link Mapper}.
+		 */
+		private final Mapper base;
+
+		/**
+		 * The classes that were added or changed, by plain name.
+		 */
+		private final Map<String, ClassData> changed;
+
+		/**
+		 * The plain names of the classes of the base that were removed.
+		 */
+		private final Set<String> removed;
+
+		/**
+		 * The number of classes.
+		 */
+		private final int size;
+
+		/**
+		 * The constructor.
+		 * @param base the base {@link Mapper}
+		 * @param changed the classes that were added or changed
+		 * @param removed the plain names of the classes that were removed
+		 */
+		private DeltaMapper(Mapper base, Map<String, ClassData> changed, Set<String> removed) {
+			this.base = base;
+			this.changed = changed;
+			this.removed = removed;
+			int added = 0;
+			for(String name : changed.keySet())
+				if(base.findClassData(name) == null)
+					added++;
+			this.size = base.getRawMappings().size() - removed.size() + added;
+		}
+
+		@Override
+		protected ClassData findClassData(String name) {
+			ClassData data = this.changed.get(name);
+			if(data != null)
+				return data;
+			return this.removed.contains(name) ? null : this.base.findClassData(name);
+		}
+
+		/**
+		 * Gets a read-only view of the "raw mappings", merging the base with the differences.
+		 * @return an unmodifiable {@link Map} tying each {@link ClassData} to the class' plain name
+		 */
+		@Override
+		public Map<String, ClassData> getRawMappings() {
+			return new AbstractMap<String, ClassData>() {
+				@Override
+				public ClassData get(Object key) {
+					return key instanceof String ? findClassData((String) key) : null;
+				}
+
+				@Override
+				public boolean containsKey(Object key) {
+					return this.get(key) != null;
+				}
+
+				@Override
+				public int size() {
+					return size;
+				}
+
+				@Override
+				public Set<Entry<String, ClassData>> entrySet() {
+					return new AbstractSet<Entry<String, ClassData>>() {
+						@Override
+						public Iterator<Entry<String, ClassData>> iterator() {
+							Iterator<Entry<String, ClassData>> inherited = base.getRawMappings().entrySet().stream()
+								.filter(e -> !changed.containsKey(e.getKey()) && !removed.contains(e.getKey()))
+								.iterator();
+							Iterator<Entry<String, ClassData>> own = changed.entrySet().iterator();
+							return new Iterator<Entry<String, ClassData>>() {
+								@Override
+								public boolean hasNext() {
+									return inherited.hasNext() || own.hasNext();
+								}
+
+								@Override
+								public Entry<String, ClassData> next() {
+									Entry<String, ClassData> entry = inherited.hasNext() ? inherited.next() : own.next();
+									return new SimpleImmutableEntry<>(entry);
+								}
+							};
+						}
+
+						@Override
+						public int size() {
+							return size;
+						}
+					};
+				}
+			};
+		}
+	}
+
+	/**
+	 * A {@link ClassData} which only stores its differences from a shared one:
+	 * its own members are those that were added or changed, and everything else
+	 * is looked up in the shared class, minus what was removed.
+	 */
+	private static class OverlayClassData extends ClassData {
+		/**
+		 * The shared {@link ClassData}.
+		 */
+		private final ClassData shared;
+
+		/**
+		 * The signatures of the methods of the shared class that were removed.
+		 */
+		private final Set<MethodSignature> removedMethods;
+
+		/**
+		 * The names of the fields of the shared class that were removed.
+		 */
+		private final Set<String> removedFields;
+
+		/**
+		 * Whether the class was renamed, in which case the members inherited from
+		 * the shared class must be copied so that they point to the right parent.
+		 */
+		private final boolean renamed;
+
+		/**
+		 * The constructor.
+		 * @param shared the shared {@link ClassData}
+		 * @param nameMapped the mapped name of this version of the class
+		 * @param removedMethods the signatures of the methods that were removed
+		 * @param removedFields the names of the fields that were removed
+		 */
+		private OverlayClassData(ClassData shared, String nameMapped, Set<MethodSignature> removedMethods, Set<String> removedFields) {
+			super(shared.name, nameMapped);
+			this.shared = shared;
+			this.removedMethods = removedMethods;
+			this.removedFields = removedFields;
+			this.renamed = !Objects.equals(shared.nameMapped, nameMapped);
+		}
+
+		/**
+		 * Builds the overlay of a class, storing only its differences from the shared one.
+		 * @param shared the shared {@link ClassData}
+		 * @param data the full {@link ClassData} of this version
+		 * @return the {@link OverlayClassData}
+		 */
+		private static OverlayClassData of(ClassData shared, ClassData data) {
+			Map<MethodSignature, MethodData> sharedMethods = shared.getMethods();
+			Map<String, FieldData> sharedFields = shared.getFields();
+			Set<MethodSignature> removedMethods = new HashSet<>();
+			for(MethodSignature signature : sharedMethods.keySet())
+				if(!data.getMethods().containsKey(signature))
+					removedMethods.add(signature);
+			Set<String> removedFields = new HashSet<>();
+			for(String name : sharedFields.keySet())
+				if(!data.getFields().containsKey(name))
+					removedFields.add(name);
+
+			OverlayClassData overlay = new OverlayClassData(shared, data.nameMapped,
+				removedMethods.isEmpty() ? Collections.emptySet() : removedMethods,
+				removedFields.isEmpty() ? Collections.emptySet() : removedFields);
+			for(MethodData method : data.getMethods().values()) {
+				MethodData old = sharedMethods.get(method.signature);
+				if(old == null || !Objects.equals(old.nameMapped, method.nameMapped))
+					overlay.addMethod(method.signature.name, method.nameMapped, method.signature.descriptor);
+			}
+			for(FieldData field : data.getFields().values()) {
+				FieldData old = sharedFields.get(field.name);
+				if(old == null || !Objects.equals(old.nameMapped, field.nameMapped) || !Objects.equals(old.descriptor, field.descriptor))
+					overlay.addField(field.name, field.nameMapped, field.descriptor);
+			}
+			return overlay;
+		}
+
+		@Override
+		public MethodData findMethod(String methodName, String methodDescriptor) {
+			MethodData own = super.findMethod(methodName, methodDescriptor);
+			MethodData inherited;
+			try {
+				inherited = this.shared.findMethod(methodName, methodDescriptor);
+			} catch(AmbiguousMappingException e) {
+				return this.findMethodMerged(methodName, methodDescriptor); //some candidates may be gone
+			}
+			if(inherited != null && (this.removedMethods.contains(inherited.signature)
+				|| super.getMethods().containsKey(inherited.signature)))
+				inherited = null;
+			if(inherited == null)
+				return own;
+			if(own == null)
+				return this.adopt(inherited);
+			String mapping = String.format("%s::%s%s", this.name, methodName, methodDescriptor);
+			throw new AmbiguousMappingException("method", mapping, Arrays.asList(
+				own.signature.name + own.signature.descriptor, inherited.signature.name + inherited.signature.descriptor));
+		}
+
+		/**
+		 * Looks for a method among all the members, merged. This is only needed when
+		 * the shared class alone finds the lookup ambiguous.
+		 * @param methodName the method name
+		 * @param methodDescriptor the method descriptor, which may be partial
+		 * @return the requested {@link MethodData}, or null if the mapping wasn't found
+		 * @throws AmbiguousMappingException if the partial descriptor matches more than one method
+		 */
+		private MethodData findMethodMerged(String methodName, String methodDescriptor) {
+			Map<MethodSignature, MethodData> methods = this.getMethods();
+			MethodData exact = methods.get(new MethodSignature(methodName, methodDescriptor));
+			if(exact != null)
+				return exact;
+			List<MethodData> matches = new ArrayList<>();
+			for(MethodData method : methods.values())
+				if(method.signature.name.equals(methodName) && method.signature.descriptor.startsWith(methodDescriptor))
+					matches.add(method);
+			if(matches.size() <= 1)
+				return matches.isEmpty() ? null : matches.get(0);
+			List<String> candidates = new ArrayList<>();
+			for(MethodData match : matches)
+				candidates.add(match.signature.name + match.signature.descriptor);
+			candidates.sort(null);
+			String mapping = String.format("%s::%s%s", this.name, methodName, methodDescriptor);
+			throw new AmbiguousMappingException("method", mapping, candidates);
+		}
+
+		@Override
+		public FieldData findField(String fieldName) {
+			FieldData own = super.findField(fieldName);
+			if(own != null || this.removedFields.contains(fieldName))
+				return own;
+			FieldData inherited = this.shared.findField(fieldName);
+			return inherited == null ? null : this.adopt(inherited);
+		}
+
+		/**
+		 * Merges the methods of the shared class with those of the overlay.
+		 * The {@link Map} is built anew at every call.
+		 * @return an unmodifiable {@link Map} tying each {@link MethodSignature} to its {@link MethodData}
+		 */
+		@Override
+		public Map<MethodSignature, MethodData> getMethods() {
+			Map<MethodSignature, MethodData> own = super.getMethods();
+			Map<MethodSignature, MethodData> methods = new HashMap<>();
+			this.shared.getMethods().forEach((signature, method) -> {
+				if(!this.removedMethods.contains(signature) && !own.containsKey(signature))
+					methods.put(signature, this.adopt(method));
+			});
+			methods.putAll(own);
+			return Collections.unmodifiableMap(methods);
+		}
+
+		/**
+		 * Merges the fields of the shared class with those of the overlay.
+		 * The {@link Map} is built anew at every call.
+		 * @return an unmodifiable {@link Map} tying each field name to its {@link FieldData}
+		 */
+		@Override
+		public Map<String, FieldData> getFields() {
+			Map<String, FieldData> own = super.getFields();
+			Map<String, FieldData> fields = new HashMap<>();
+			this.shared.getFields().forEach((name, field) -> {
+				if(!this.removedFields.contains(name) && !own.containsKey(name))
+					fields.put(name, this.adopt(field));
+			});
+			fields.putAll(own);
+			return Collections.unmodifiableMap(fields);
+		}
+
+		/**
+		 * Makes a method of the shared class point to this one, if it was renamed.
+		 * @param method the {@link MethodData} of the shared class
+		 * @return a {@link MethodData} with the right parent
+		 */
+		private MethodData adopt(MethodData method) {
+			if(!this.renamed)
+				return method;
+			return new MethodData(this, method.signature.name, method.nameMapped, method.signature.descriptor);
+		}
+
+		/**
+		 * Makes a field of the shared class point to this one, if it was renamed.
+		 * @param field the {@link FieldData} of the shared class
+		 * @return a {@link FieldData} with the right parent
+		 */
+		private FieldData adopt(FieldData field) {
+			if(!this.renamed)
+				return field;
+			return new FieldData(this, field.name, field.nameMapped, field.descriptor);
+		}
+	}
+}
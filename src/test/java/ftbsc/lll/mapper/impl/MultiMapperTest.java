@@ -0,0 +1,128 @@
+package ftbsc.lll.mapper.impl;
+
+import com.sun.net.httpserver.HttpServer;
+import ftbsc.lll.exceptions.MappingChainException;
+import ftbsc.lll.mapper.MapperProvider;
+import ftbsc.lll.mapper.utils.Mapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link MultiMapper}.
+ */
+public class MultiMapperTest {
+	/**
+	 * Obfuscated to intermediate names.
+	 */
+	private static final String FIRST = "tsrg2 obf srg\n"
+		+ "a net/minecraft/A\n"
+		+ "\tb (La;)V m_tick\n"
+		+ "\tc f_field\n";
+
+	/**
+	 * Intermediate to readable names.
+	 */
+	private static final String SECOND = "tsrg2 srg mcp\n"
+		+ "net/minecraft/A net/A\n"
+		+ "\tm_tick (Lnet/minecraft/A;)V tick\n"
+		+ "\tf_field field\n";
+
+	/**
+	 * The directory the mapping files are written to.
+	 */
+	@TempDir
+	Path dir;
+
+	/**
+	 * The server remote mappings are fetched from.
+	 */
+	private HttpServer server;
+
+	@BeforeEach
+	void setUp() {
+		MapperProvider.setResourceCache(null);
+	}
+
+	@AfterEach
+	void tearDown() {
+		if(this.server != null)
+			this.server.stop(0);
+	}
+
+	@Test
+	void composesLocalChainInDeclaredOrder() throws IOException {
+		Path chain = this.write("chain.txt", "lll multimapper\n"
+			+ this.write("first.tsrg", FIRST) + "\n"
+			+ this.write("second.tsrg", SECOND) + "\n");
+
+		Mapper mapper = MapperProvider.loadMapper(chain.toString(), false);
+		assertEquals("net/A", mapper.getClassData("a").nameMapped);
+		assertEquals("tick", mapper.getMethodData("a", "b", "(La;)V").nameMapped);
+		assertEquals("field", mapper.getFieldData("a", "c").nameMapped);
+		assertEquals("a", mapper.getInverted().getClassData("net/A").nameMapped);
+	}
+
+	@Test
+	void reportsEveryFailedLocation() throws IOException {
+		String missing1 = this.dir.resolve("missing1.tsrg").toString();
+		String missing2 = this.dir.resolve("missing2.tsrg").toString();
+		String malformed = this.write("malformed.tsrg", "tsrg2 obf srg\na b c d e\n").toString();
+		Path chain = this.write("chain.txt", "lll multimapper\n"
+			+ missing1 + "\n"
+			+ this.write("first.tsrg", FIRST) + "\n"
+			+ malformed + "\n"
+			+ missing2 + "\n");
+
+		MappingChainException e = assertThrows(MappingChainException.class,
+			() -> MapperProvider.loadMapper(chain.toString(), false));
+		for(String location : Arrays.asList(missing1, malformed, missing2))
+			assertTrue(e.getMessage().contains(location), "missing " + location + " in: " + e.getMessage());
+		assertTrue(e.getMessage().contains("3 out of 4"), e.getMessage());
+		assertEquals(3, e.getSuppressed().length);
+	}
+
+	@Test
+	void fetchesRemoteEntries() throws IOException {
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		this.server.createContext("/second.tsrg", exchange -> {
+			byte[] body = SECOND.getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(200, body.length);
+			try(OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		this.server.start();
+
+		String remote = String.format("http://127.0.0.1:%d/second.tsrg", this.server.getAddress().getPort());
+		Path chain = this.write("chain.txt", "lll multimapper\n"
+			+ this.write("first.tsrg", FIRST) + "\n"
+			+ remote + "\n");
+
+		Mapper mapper = MapperProvider.loadMapper(chain.toString(), false);
+		assertEquals("net/A", mapper.getClassData("a").nameMapped);
+		assertEquals("tick", mapper.getMethodData("a", "b", "(La;)V").nameMapped);
+	}
+
+	/**
+	 * Writes a file in the temporary directory.
+	 * @param name the name of the file
+	 * @param content its content
+	 * @return its path
+	 * @throws IOException if something goes wrong while writing
+	 */
+	private Path write(String name, String content) throws IOException {
+		return Files.write(this.dir.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,196 @@
+package ftbsc.lll.mapper.utils;
+
+import com.sun.net.httpserver.HttpServer;
+import ftbsc.lll.exceptions.InvalidResourceException;
+import ftbsc.lll.exceptions.MalformedMappingsException;
+import ftbsc.lll.exceptions.MappingNotFoundException;
+import ftbsc.lll.mapper.MapperProvider;
+import ftbsc.lll.mapper.data.ClassData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link AsyncMapper}.
+ */
+public class AsyncMapperTest {
+	/**
+	 * How long to wait for anything before giving up, in seconds.
+	 */
+	private static final int TIMEOUT = 20;
+
+	/**
+	 * The number of classes in the generated mappings, enough for many chunks.
+	 */
+	private static final int CLASSES = 5000;
+
+	/**
+	 * The directory the mapping files are written to.
+	 */
+	@TempDir
+	Path dir;
+
+	/**
+	 * The server remote mappings are fetched from.
+	 */
+	private HttpServer server;
+
+	/**
+	 * The {@link ExecutorService} the mappers are loaded on.
+	 */
+	private ExecutorService executor;
+
+	@BeforeEach
+	void setUp() {
+		MapperProvider.setResourceCache(null);
+	}
+
+	@AfterEach
+	void tearDown() {
+		if(this.server != null)
+			this.server.stop(0);
+		if(this.executor != null)
+			this.executor.shutdownNow();
+	}
+
+	@Test
+	void loadsOnSaturatedFixedPools() throws Exception {
+		Path file = this.write("big.tsrg", mappings(0, CLASSES));
+		for(int threads = 1; threads <= 3; threads++) {
+			this.executor = Executors.newFixedThreadPool(threads);
+			CountDownLatch gate = new CountDownLatch(1);
+			AsyncMapper[] mapper = new AsyncMapper[1];
+
+			//occupy every thread with a lookup queued before the reader
+			List<Future<String>> lookups = new ArrayList<>();
+			for(int i = 0; i < threads; i++) {
+				String name = "a/C" + (CLASSES - 1 - i);
+				lookups.add(this.executor.submit(() -> {
+					gate.await();
+					return mapper[0].getClassData(name).nameMapped;
+				}));
+			}
+			mapper[0] = AsyncMapper.load(file.toString(), false, this.executor);
+			gate.countDown();
+
+			for(int i = 0; i < threads; i++)
+				assertEquals("M" + (CLASSES - 1 - i), lookups.get(i).get(TIMEOUT, TimeUnit.SECONDS));
+			assertEquals(CLASSES, mapper[0].whenLoaded().get(TIMEOUT, TimeUnit.SECONDS).getRawMappings().size());
+			this.executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void completesAwaitedClassesEarly() throws Exception {
+		//the server sends the first half, then holds the rest back until released
+		CountDownLatch release = new CountDownLatch(1);
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		this.server.createContext("/", exchange -> {
+			exchange.sendResponseHeaders(200, 0);
+			try(OutputStream out = exchange.getResponseBody()) {
+				out.write(mappings(0, CLASSES / 2).getBytes(StandardCharsets.UTF_8));
+				out.flush();
+				release.await(TIMEOUT, TimeUnit.SECONDS);
+				out.write(mappings(CLASSES / 2, CLASSES).substring("tsrg2 left right\n".length())
+					.getBytes(StandardCharsets.UTF_8));
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		this.server.start();
+
+		this.executor = Executors.newFixedThreadPool(2);
+		String url = String.format("http://127.0.0.1:%d/big.tsrg", this.server.getAddress().getPort());
+		AsyncMapper mapper = AsyncMapper.load(url, false, this.executor);
+		try {
+			ClassData first = mapper.awaitClass("a.C0").get(TIMEOUT, TimeUnit.SECONDS);
+			assertEquals("M0", first.nameMapped);
+			assertFalse(mapper.whenLoaded().isDone());
+			assertFalse(mapper.isLoaded());
+			assertTrue(mapper.getLoadedCount() < CLASSES);
+			assertSame(first, mapper.getClassData("a/C0"));
+		} finally {
+			release.countDown();
+		}
+
+		CompletableFuture<ClassData> last = mapper.awaitClass("a/C" + (CLASSES - 1));
+		mapper.whenLoaded().get(TIMEOUT, TimeUnit.SECONDS);
+		assertTrue(mapper.isLoaded());
+		assertEquals(CLASSES, mapper.getLoadedCount());
+		assertEquals("M" + (CLASSES - 1), last.get(TIMEOUT, TimeUnit.SECONDS).nameMapped);
+
+		ExecutionException missing = assertThrows(ExecutionException.class,
+			() -> mapper.awaitClass("a/Missing").get(TIMEOUT, TimeUnit.SECONDS));
+		assertTrue(missing.getCause() instanceof MappingNotFoundException);
+	}
+
+	@Test
+	void propagatesMalformedMappingsThroughWhenLoaded() throws Exception {
+		String content = mappings(0, CLASSES) + "\ttoo many tokens here\n" + "a/Late L\n";
+		Path file = this.write("malformed.tsrg", content);
+		this.executor = Executors.newFixedThreadPool(2);
+		AsyncMapper mapper = AsyncMapper.load(file.toString(), false, this.executor);
+
+		ExecutionException loaded = assertThrows(ExecutionException.class,
+			() -> mapper.whenLoaded().get(TIMEOUT, TimeUnit.SECONDS));
+		assertTrue(loaded.getCause() instanceof MalformedMappingsException);
+		assertFalse(mapper.isLoaded());
+
+		ExecutionException late = assertThrows(ExecutionException.class,
+			() -> mapper.awaitClass("a/Late").get(TIMEOUT, TimeUnit.SECONDS));
+		assertSame(loaded.getCause(), late.getCause());
+		assertThrows(MalformedMappingsException.class, () -> mapper.getClassData("a/Late"));
+		assertThrows(MalformedMappingsException.class, mapper::getRawMappings);
+	}
+
+	@Test
+	void propagatesMissingResourcesThroughWhenLoaded() throws Exception {
+		this.executor = Executors.newFixedThreadPool(1);
+		AsyncMapper mapper = AsyncMapper.load(this.dir.resolve("missing.tsrg").toString(), false, this.executor);
+
+		ExecutionException loaded = assertThrows(ExecutionException.class,
+			() -> mapper.whenLoaded().get(TIMEOUT, TimeUnit.SECONDS));
+		assertTrue(loaded.getCause() instanceof InvalidResourceException);
+		assertThrows(InvalidResourceException.class, () -> mapper.getClassData("a/C0"));
+	}
+
+	/**
+	 * Generates TSRG2 mappings, where class "a/Cn" is mapped to "Mn" and has a few methods.
+	 * @param from the index of the first class
+	 * @param to the index after the last class
+	 * @return the mappings, with their header
+	 */
+	private static String mappings(int from, int to) {
+		StringBuilder sb = new StringBuilder("tsrg2 left right\n");
+		for(int c = from; c < to; c++) {
+			sb.append("a/C").append(c).append(" M").append(c).append('\n');
+			for(int m = 0; m < 3; m++)
+				sb.append("\tm").append(m).append(" ()V mapped").append(m).append('\n');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Writes a file.
+	 * @param name the name of the file
+	 * @param content its content
+	 * @return its path
+	 * @throws IOException if something goes wrong while writing
+	 */
+	private Path write(String name, String content) throws IOException {
+		return Files.write(this.dir.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+	}
+}
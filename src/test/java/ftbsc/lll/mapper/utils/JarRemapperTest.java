@@ -0,0 +1,232 @@
+package ftbsc.lll.mapper.utils;
+
+import ftbsc.lll.mapper.impl.TSRGMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.InvokeDynamicInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link JarRemapper}, on a synthetic jar.
+ */
+public class JarRemapperTest {
+	/**
+	 * The manifest of the synthetic jar, with the digest of a signed class.
+	 */
+	private static final String MANIFEST = "Manifest-Version: 1.0\r\n"
+		+ "Main-Class: a.A\r\n"
+		+ "\r\n"
+		+ "Name: a/A.class\r\n"
+		+ "SHA-256-Digest: AAAA\r\n"
+		+ "\r\n";
+
+	/**
+	 * The directory the jars are written to.
+	 */
+	@TempDir
+	Path dir;
+
+	@Test
+	void remapsJarsReproducibly() throws IOException {
+		Path input = this.writeInput();
+		Mapper mapper = new TSRGMapper().getMapper(Arrays.asList(
+			"tsrg2 obf named",
+			"a/A net/A",
+			"\tb (La/B;)V run",
+			"a/B net/B",
+			"\tc owner",
+			"a/F net/F",
+			"\tx ()V go"), false);
+
+		Path first = this.dir.resolve("first.jar");
+		Path second = this.dir.resolve("second.jar");
+		new JarRemapper(mapper).remap(input, first);
+		new JarRemapper(mapper).remap(input, second);
+		assertArrayEquals(Files.readAllBytes(first), Files.readAllBytes(second));
+
+		try(ZipFile zip = new ZipFile(first.toFile())) {
+			List<String> names = new ArrayList<>();
+			zip.stream().forEach(entry -> names.add(entry.getName()));
+			assertEquals(Arrays.asList("META-INF/", "META-INF/MANIFEST.MF", "net/", "net/A.class", "net/B.class",
+				"net/F.class", "res/", "res/deflated.txt", "res/stored.txt"), names);
+
+			assertEquals(ZipEntry.STORED, zip.getEntry("res/stored.txt").getMethod());
+			assertEquals(ZipEntry.DEFLATED, zip.getEntry("res/deflated.txt").getMethod());
+			assertEquals(ZipEntry.STORED, zip.getEntry("net/B.class").getMethod());
+
+			Manifest manifest = new Manifest(zip.getInputStream(zip.getEntry("META-INF/MANIFEST.MF")));
+			assertEquals("a.A", manifest.getMainAttributes().getValue("Main-Class"));
+			assertTrue(manifest.getEntries().isEmpty());
+
+			ClassNode a = readClass(zip, "net/A.class");
+			assertEquals("net/A", a.name);
+			MethodNode run = a.methods.stream().filter(m -> m.name.equals("run")).findFirst().orElse(null);
+			assertNotNull(run);
+			assertEquals("(Lnet/B;)V", run.desc);
+			MethodInsnNode call = (MethodInsnNode) Arrays.stream(run.instructions.toArray())
+				.filter(insn -> insn instanceof MethodInsnNode).findFirst().orElse(null);
+			assertNotNull(call);
+			assertEquals("net/B", call.owner);
+
+			ClassNode b = readClass(zip, "net/B.class");
+			assertEquals("net/B", b.name);
+			FieldNode owner = b.fields.get(0);
+			assertEquals("owner", owner.name);
+			assertEquals("Lnet/A;", owner.desc);
+
+			MethodNode lambda = a.methods.stream().filter(m -> m.name.equals("lambda")).findFirst().orElse(null);
+			assertNotNull(lambda);
+			InvokeDynamicInsnNode indy = (InvokeDynamicInsnNode) Arrays.stream(lambda.instructions.toArray())
+				.filter(insn -> insn instanceof InvokeDynamicInsnNode).findFirst().orElse(null);
+			assertNotNull(indy);
+			assertEquals("go", indy.name);
+			assertEquals("()Lnet/F;", indy.desc);
+			assertEquals("go", readClass(zip, "net/F.class").methods.get(0).name);
+		}
+	}
+
+	/**
+	 * Writes the synthetic jar, with the manifest last and a signature.
+	 * @return its path
+	 * @throws IOException if something goes wrong while writing
+	 */
+	private Path writeInput() throws IOException {
+		Path input = this.dir.resolve("input.jar");
+		try(ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(input))) {
+			put(out, "a/", new byte[0], false);
+			put(out, "a/A.class", classA(), false);
+			put(out, "a/B.class", classB(), true);
+			put(out, "a/F.class", classF(), false);
+			put(out, "res/stored.txt", "stored".getBytes(StandardCharsets.UTF_8), true);
+			put(out, "res/deflated.txt", new byte[4096], false);
+			put(out, "META-INF/TEST.SF", "Signature-Version: 1.0\r\n\r\n".getBytes(StandardCharsets.UTF_8), false);
+			put(out, "META-INF/TEST.RSA", new byte[16], false);
+			put(out, "META-INF/MANIFEST.MF", MANIFEST.getBytes(StandardCharsets.UTF_8), false);
+		}
+		return input;
+	}
+
+	/**
+	 * @return a class calling a method of the other one, and creating a lambda
+	 */
+	private static byte[] classA() {
+		ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "a/A", null, "java/lang/Object", null);
+		MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC, "b", "(La/B;)V", null, null);
+		method.visitCode();
+		method.visitVarInsn(Opcodes.ALOAD, 1);
+		method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "a/B", "hashCode", "()I", false);
+		method.visitInsn(Opcodes.POP);
+		method.visitInsn(Opcodes.RETURN);
+		method.visitMaxs(0, 0);
+		method.visitEnd();
+
+		Handle metafactory = new Handle(Opcodes.H_INVOKESTATIC, "java/lang/invoke/LambdaMetafactory", "metafactory",
+			"(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;"
+				+ "Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodHandle;Ljava/lang/invoke/MethodType;)"
+				+ "Ljava/lang/invoke/CallSite;", false);
+		Handle body = new Handle(Opcodes.H_INVOKESTATIC, "a/A", "lambda$0", "()V", false);
+		method = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "lambda", "()La/F;", null, null);
+		method.visitCode();
+		method.visitInvokeDynamicInsn("x", "()La/F;", metafactory, Type.getType("()V"), body, Type.getType("()V"));
+		method.visitInsn(Opcodes.ARETURN);
+		method.visitMaxs(0, 0);
+		method.visitEnd();
+
+		method = writer.visitMethod(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC, "lambda$0", "()V", null, null);
+		method.visitCode();
+		method.visitInsn(Opcodes.RETURN);
+		method.visitMaxs(0, 0);
+		method.visitEnd();
+		writer.visitEnd();
+		return writer.toByteArray();
+	}
+
+	/**
+	 * @return a class holding a field of the type of the other one
+	 */
+	private static byte[] classB() {
+		ClassWriter writer = new ClassWriter(0);
+		writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "a/B", null, "java/lang/Object", null);
+		writer.visitField(Opcodes.ACC_PUBLIC, "c", "La/A;", null, null).visitEnd();
+		writer.visitEnd();
+		return writer.toByteArray();
+	}
+
+	/**
+	 * @return a functional interface
+	 */
+	private static byte[] classF() {
+		ClassWriter writer = new ClassWriter(0);
+		writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT,
+			"a/F", null, "java/lang/Object", null);
+		writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "x", "()V", null, null).visitEnd();
+		writer.visitEnd();
+		return writer.toByteArray();
+	}
+
+	/**
+	 * Writes an entry.
+	 * @param out the {@link ZipOutputStream} to write to
+	 * @param name the name of the entry
+	 * @param bytes its content
+	 * @param stored whether it should be stored uncompressed
+	 * @throws IOException if something goes wrong while writing
+	 */
+	private static void put(ZipOutputStream out, String name, byte[] bytes, boolean stored) throws IOException {
+		ZipEntry entry = new ZipEntry(name);
+		if(stored) {
+			CRC32 crc = new CRC32();
+			crc.update(bytes);
+			entry.setMethod(ZipEntry.STORED);
+			entry.setSize(bytes.length);
+			entry.setCompressedSize(bytes.length);
+			entry.setCrc(crc.getValue());
+		}
+		out.putNextEntry(entry);
+		out.write(bytes);
+		out.closeEntry();
+	}
+
+	/**
+	 * Reads a class from a jar.
+	 * @param zip the {@link ZipFile} to read from
+	 * @param name the name of the entry
+	 * @return the {@link ClassNode}
+	 * @throws IOException if something goes wrong while reading
+	 */
+	private static ClassNode readClass(ZipFile zip, String name) throws IOException {
+		ZipEntry entry = zip.getEntry(name);
+		assertNotNull(entry, name + " is missing");
+		try(InputStream in = zip.getInputStream(entry)) {
+			ClassNode node = new ClassNode();
+			new ClassReader(in).accept(node, 0);
+			return node;
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package ftbsc.lll.mapper.utils;
+
+import ftbsc.lll.exceptions.InvalidResourceException;
+import ftbsc.lll.mapper.data.ClassData;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link ReloadableMapper}.
+ */
+public class ReloadableMapperTest {
+	/**
+	 * The mappings first written to the file.
+	 */
+	private static final String MAPPINGS = "tsrg2 obf named\n"
+		+ "a/A net/A\n"
+		+ "\tb ()V run\n"
+		+ "a/B net/B\n"
+		+ "\tc ()V stop\n"
+		+ "\td owner\n"
+		+ "a/C net/C\n"
+		+ "\te ()V jump\n";
+
+	/**
+	 * The directory the mapping files are written to.
+	 */
+	@TempDir
+	Path dir;
+
+	@Test
+	void keepsUnchangedClassesOnReload() throws IOException {
+		Path file = this.write(MAPPINGS);
+		ReloadableMapper mapper = new ReloadableMapper(file, false);
+		ClassData a = mapper.getClassData("a/A");
+		ClassData b = mapper.getClassData("a/B");
+		ClassData c = mapper.getClassData("a/C");
+		List<Set<String>> notified = new ArrayList<>();
+		mapper.addListener(notified::add);
+
+		assertTrue(mapper.reload().isEmpty());
+		assertTrue(notified.isEmpty());
+
+		this.write(MAPPINGS.replace("\tc ()V stop\n", "\tc ()V halt\n"));
+		Set<String> changed = mapper.reload();
+		assertEquals(Collections.singleton("a/B"), changed);
+		assertEquals(Collections.singletonList(changed), notified);
+		assertSame(a, mapper.getClassData("a/A"));
+		assertSame(c, mapper.getClassData("a/C"));
+		assertNotSame(b, mapper.getClassData("a/B"));
+		assertEquals("halt", mapper.getMethodData("a/B", "c", "()V").nameMapped);
+		assertEquals("owner", mapper.getFieldData("a/B", "d").nameMapped);
+	}
+
+	@Test
+	void reportsAddedAndRemovedClasses() throws IOException {
+		Path file = this.write(MAPPINGS);
+		ReloadableMapper mapper = new ReloadableMapper(file, false);
+		ClassData a = mapper.getClassData("a/A");
+
+		this.write(MAPPINGS.replace("a/C net/C\n\te ()V jump\n", "a/D net/D\n"));
+		Set<String> changed = mapper.reload();
+		assertEquals(2, changed.size());
+		assertTrue(changed.contains("a/C"));
+		assertTrue(changed.contains("a/D"));
+		assertNull(mapper.getRawMappings().get("a/C"));
+		assertEquals("net/D", mapper.getClassData("a/D").nameMapped);
+		assertSame(a, mapper.getClassData("a/A"));
+	}
+
+	@Test
+	void keepsMappingsWhenTheFileCannotBeRead() throws IOException {
+		Path file = this.write(MAPPINGS);
+		ReloadableMapper mapper = new ReloadableMapper(file, false);
+		ClassData a = mapper.getClassData("a/A");
+
+		Files.delete(file);
+		InvalidResourceException e = assertThrows(InvalidResourceException.class, mapper::reload);
+		assertTrue(e.getCause() instanceof IOException);
+		assertSame(a, mapper.getClassData("a/A"));
+	}
+
+	/**
+	 * Writes the mapping file.
+	 * @param content its content
+	 * @return its path
+	 * @throws IOException if something goes wrong while writing
+	 */
+	private Path write(String content) throws IOException {
+		return Files.write(this.dir.resolve("mappings.tsrg"), content.getBytes(StandardCharsets.UTF_8));
+	}
+}
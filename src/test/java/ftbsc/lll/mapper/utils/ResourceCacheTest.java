@@ -0,0 +1,213 @@
+package ftbsc.lll.mapper.utils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link ResourceCache}, against a local {@link HttpServer}.
+ */
+public class ResourceCacheTest {
+	/**
+	 * The directory the cache lives in.
+	 */
+	@TempDir
+	Path dir;
+
+	/**
+	 * The server resources are fetched from.
+	 */
+	private HttpServer server;
+
+	/**
+	 * The status codes sent by the server, in order.
+	 */
+	private final List<Integer> responses = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Whether the server should fail every request.
+	 */
+	private volatile boolean failing;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		this.server.createContext("/", this::handle);
+		this.server.start();
+	}
+
+	@AfterEach
+	void tearDown() {
+		this.server.stop(0);
+	}
+
+	@Test
+	void revalidatesWithConditionalRequests() throws IOException {
+		ResourceCache cache = new ResourceCache(this.dir, Long.MAX_VALUE, false);
+		assertEquals("content of a", read(cache.open(this.url("a"))));
+		assertEquals("content of a", read(cache.open(this.url("a"))));
+		assertEquals(200, (int) this.responses.get(0));
+		assertEquals(304, (int) this.responses.get(1));
+		assertEquals(2, this.responses.size());
+	}
+
+	@Test
+	void servesCachedResourcesOffline() throws IOException {
+		ResourceCache cache = new ResourceCache(this.dir, Long.MAX_VALUE, false);
+		read(cache.open(this.url("a")));
+		this.server.stop(0);
+
+		cache.setOffline(true);
+		assertEquals("content of a", read(cache.open(this.url("a"))));
+		assertThrows(IOException.class, () -> cache.open(this.url("b")));
+		assertEquals(1, this.responses.size());
+	}
+
+	@Test
+	void fallsBackToStaleEntriesOnError() throws IOException {
+		ResourceCache cache = new ResourceCache(this.dir, Long.MAX_VALUE, false);
+		read(cache.open(this.url("a")));
+
+		this.failing = true;
+		assertEquals("content of a", read(cache.open(this.url("a"))));
+		assertEquals(500, (int) this.responses.get(1));
+		assertThrows(IOException.class, () -> cache.open(this.url("b")));
+
+		this.server.stop(0);
+		assertEquals("content of a", read(cache.open(this.url("a"))));
+	}
+
+	@Test
+	void treatsModifiedEntriesAsMissing() throws IOException {
+		ResourceCache cache = new ResourceCache(this.dir, Long.MAX_VALUE, false);
+		read(cache.open(this.url("a")));
+		Path data = this.dataFiles().get(0);
+		Files.write(data, "tampered".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+		cache.setOffline(true);
+		assertThrows(IOException.class, () -> cache.open(this.url("a")));
+		assertTrue(Files.exists(data));
+
+		cache.setOffline(false);
+		assertEquals("content of a", read(cache.open(this.url("a"))));
+		assertEquals(200, (int) this.responses.get(1));
+	}
+
+	@Test
+	void verifiesEntriesAgainstTheirHash() throws IOException {
+		ResourceCache cache = new ResourceCache(this.dir, Long.MAX_VALUE, false);
+		assertFalse(cache.verify(this.url("a")));
+		read(cache.open(this.url("a")));
+		assertTrue(cache.verify(this.url("a")));
+
+		//same size and modification time, so only the hash can tell
+		Path data = this.dataFiles().get(0);
+		FileTime modified = Files.getLastModifiedTime(data);
+		Files.write(data, "content of z".getBytes(StandardCharsets.UTF_8));
+		Files.setLastModifiedTime(data, modified);
+		cache.setOffline(true);
+		assertEquals("content of z", read(cache.open(this.url("a"))));
+
+		assertFalse(cache.verify(this.url("a")));
+		assertTrue(this.dataFiles().isEmpty());
+		assertThrows(IOException.class, () -> cache.open(this.url("a")));
+	}
+
+	@Test
+	void evictsLeastRecentlyUsedEntries() throws IOException {
+		//each resource is 12 bytes long, so only two fit
+		ResourceCache cache = new ResourceCache(this.dir, 30, false);
+		read(cache.open(this.url("a")));
+		read(cache.open(this.url("b")));
+		read(cache.open(this.url("a")));
+		read(cache.open(this.url("c")));
+		assertEquals(2, this.dataFiles().size());
+
+		cache.setOffline(true);
+		assertEquals("content of a", read(cache.open(this.url("a"))));
+		assertEquals("content of c", read(cache.open(this.url("c"))));
+		assertThrows(IOException.class, () -> cache.open(this.url("b")));
+	}
+
+	/**
+	 * Serves "content of x" at "/x", with "x" as its ETag, honouring If-None-Match.
+	 * @param exchange the {@link HttpExchange}
+	 * @throws IOException if something goes wrong while responding
+	 */
+	private void handle(HttpExchange exchange) throws IOException {
+		String name = exchange.getRequestURI().getPath().substring(1);
+		String etag = '"' + name + '"';
+		int status;
+		byte[] body = new byte[0];
+		if(this.failing) {
+			status = 500;
+		} else if(etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+			status = 304;
+		} else {
+			status = 200;
+			body = ("content of " + name).getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("ETag", etag);
+		}
+		this.responses.add(status);
+		exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+		try(OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	/**
+	 * @param name the name of the resource
+	 * @return its URL on the local server
+	 * @throws IOException if the URL is malformed
+	 */
+	private URL url(String name) throws IOException {
+		return new URL(String.format("http://127.0.0.1:%d/%s", this.server.getAddress().getPort(), name));
+	}
+
+	/**
+	 * @return the cached data files
+	 * @throws IOException if the directory could not be listed
+	 */
+	private List<Path> dataFiles() throws IOException {
+		try(Stream<Path> files = Files.list(this.dir)) {
+			return files.filter(f -> f.getFileName().toString().endsWith(".data")).collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * Reads a stream fully, and closes it.
+	 * @param in the {@link InputStream}
+	 * @return its content, as UTF-8
+	 * @throws IOException if something goes wrong while reading
+	 */
+	private static String read(InputStream in) throws IOException {
+		try(InputStream stream = in) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			for(int read; (read = stream.read(buffer)) != -1;)
+				out.write(buffer, 0, read);
+			return new String(out.toByteArray(), StandardCharsets.UTF_8);
+		}
+	}
+}